@@ -18,8 +18,8 @@ package io.vertx.ext.sockjs;
 import io.vertx.codegen.annotations.Options;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sockjs.impl.PermittedRules;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -34,6 +34,7 @@ public class BridgeOptions {
   private static final int DEFAULT_MAXHANDLERSPERSOCKET = 1000;
   private static final long DEFAULT_PINGTIMEOUT = 10 * 1000;
   private static final long DEFAULT_REPLYTIMEOUT = 30 * 1000;
+  private static final boolean DEFAULT_SHAREDCONSUMERS = false;
 
   private long authTimeout;
   private String authAddress;
@@ -41,9 +42,10 @@ public class BridgeOptions {
   private int maxHandlersPerSocket;
   private long pingTimeout;
   private long replyTimeout;
+  private boolean sharedConsumers;
 
-  private List<JsonObject> inboundPermitted = new ArrayList<>();
-  private List<JsonObject> outboundPermitted = new ArrayList<>();
+  private List<JsonObject> inboundPermitted = new PermittedRules();
+  private List<JsonObject> outboundPermitted = new PermittedRules();
 
   public BridgeOptions(BridgeOptions other) {
     throw new UnsupportedOperationException("todo");
@@ -56,6 +58,7 @@ public class BridgeOptions {
     this.maxHandlersPerSocket = DEFAULT_MAXHANDLERSPERSOCKET;
     this.pingTimeout = DEFAULT_PINGTIMEOUT;
     this.replyTimeout = DEFAULT_REPLYTIMEOUT;
+    this.sharedConsumers = DEFAULT_SHAREDCONSUMERS;
   }
 
   public BridgeOptions(JsonObject json) {
@@ -65,6 +68,7 @@ public class BridgeOptions {
     this.maxHandlersPerSocket = json.getInteger("maxHandlersPerSocket", DEFAULT_MAXHANDLERSPERSOCKET);
     this.pingTimeout = json.getLong("pingTimeout", DEFAULT_PINGTIMEOUT);
     this.replyTimeout = json.getLong("replyTimeout", DEFAULT_REPLYTIMEOUT);
+    this.sharedConsumers = json.getBoolean("sharedConsumers", DEFAULT_SHAREDCONSUMERS);
     //TODO simplify common code
     JsonArray arr = json.getJsonArray("inboundPermitteds");
     if (arr != null) {
@@ -159,6 +163,30 @@ public class BridgeOptions {
     return this;
   }
 
+  public boolean isSharedConsumers() {
+    return sharedConsumers;
+  }
+
+  /**
+   * Register a single event bus consumer per address for all the sockets of the bridge, each message is checked
+   * and encoded once then written to every socket registered for the address. A message expecting a reply is
+   * written to one of the sockets, other messages sent to the address are written to all of them, as if they
+   * were published.
+   * <p>
+   * Warning: a point to point {@code send} that doesn't expect a reply then reaches every socket registered for the
+   * address instead of one of them. Don't share the consumers when the clients use an address as a work queue, each
+   * message would be handled once per socket.
+   */
+  public BridgeOptions setSharedConsumers(boolean sharedConsumers) {
+    this.sharedConsumers = sharedConsumers;
+    return this;
+  }
+
+  /**
+   * Permit the messages sent by the clients that match the rule. Rules added to or removed from the list, here or
+   * through {@link #getInboundPermitteds()}, apply to the bridges using these options from the next message. A rule
+   * changed in place applies once it is set again in the list.
+   */
   public BridgeOptions addInboundPermitted(JsonObject json) {
     inboundPermitted.add(json);
     return this;
@@ -168,6 +196,11 @@ public class BridgeOptions {
     return inboundPermitted;
   }
 
+  /**
+   * Permit the messages delivered to the clients that match the rule. Rules added to or removed from the list, here
+   * or through {@link #getOutboundPermitteds()}, apply to the bridges using these options from the next message. A
+   * rule changed in place applies once it is set again in the list.
+   */
   public BridgeOptions addOutboundPermitted(JsonObject json) {
     outboundPermitted.add(json);
     return this;
@@ -21,6 +21,7 @@ import io.vertx.codegen.annotations.GenIgnore;
 import io.vertx.codegen.annotations.VertxGen;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServer;
 import io.vertx.ext.sockjs.impl.SockJSServerImpl;
 
@@ -45,6 +46,34 @@ public interface SockJSServer {
   @Fluent
   SockJSServer bridge(SockJSServerOptions options, BridgeOptions bridgeOptions);
 
+  /**
+   * Write the message to all the sockets. The message is escaped and framed once and the same frame is sent
+   * to every socket, which is much cheaper than writing the message to each socket when there are many of them.
+   */
+  @GenIgnore
+  @Fluent
+  SockJSServer broadcast(Iterable<? extends SockJSSocket> sockets, Buffer message);
+
+  /**
+   * Add the socket to a group, groups are shared by all the SockJS servers of the Vert.x instance.
+   * A socket leaves all its groups when it's closed.
+   */
+  @Fluent
+  SockJSServer join(String group, SockJSSocket sock);
+
+  /**
+   * Remove the socket from a group
+   */
+  @Fluent
+  SockJSServer leave(String group, SockJSSocket sock);
+
+  /**
+   * Write the message to all the sockets of a group. The message is encoded once and written to the sockets
+   * by the event loops that own them, with one task per event loop.
+   */
+  @Fluent
+  SockJSServer publish(String group, Buffer message);
+
   void close();
 
   /*
@@ -32,6 +32,11 @@ public class SockJSServerOptions {
   private static final boolean DEFAULT_INSERTSESSIONID = true;
   private static final long DEFAULT_HEARTBEATPERIOD = 25l * 1000;
   private static final int DEFAULT_MAXBYTESSTREAMING = 128 * 1024;
+  private static final long DEFAULT_STREAMINGFLUSHDELAY = -1;
+  private static final long DEFAULT_POLLHOLDWINDOW = 0;
+  private static final boolean DEFAULT_COMPRESSSTREAMING = false;
+  private static final boolean DEFAULT_RAWWEBSOCKETBINARY = false;
+  private static final int DEFAULT_RAWWEBSOCKETMAXMESSAGESIZE = 1024 * 1024;
   private static final String DEFAULT_PREFIX = "/";
   private static final String DEFAULT_LIBRARYURL = "http://cdn.sockjs.org/sockjs-0.3.4.min.js";
 
@@ -39,6 +44,11 @@ public class SockJSServerOptions {
   private boolean insertJSESSIONID = true;
   private long heartbeatPeriod = 25l * 1000;
   private int maxBytesStreaming = 128 * 1024;
+  private long streamingFlushDelay = -1;
+  private long pollHoldWindow = 0;
+  private boolean compressStreaming = false;
+  private boolean rawWebSocketBinary = false;
+  private int rawWebSocketMaxMessageSize = 1024 * 1024;
   private String prefix = "/";
   private String libraryURL = "http://cdn.sockjs.org/sockjs-0.3.4.min.js";
   private Set<String> disabledTransports = new HashSet<>();
@@ -52,6 +62,11 @@ public class SockJSServerOptions {
     this.insertJSESSIONID = DEFAULT_INSERTSESSIONID;
     this.heartbeatPeriod = DEFAULT_HEARTBEATPERIOD;
     this.maxBytesStreaming = DEFAULT_MAXBYTESSTREAMING;
+    this.streamingFlushDelay = DEFAULT_STREAMINGFLUSHDELAY;
+    this.pollHoldWindow = DEFAULT_POLLHOLDWINDOW;
+    this.compressStreaming = DEFAULT_COMPRESSSTREAMING;
+    this.rawWebSocketBinary = DEFAULT_RAWWEBSOCKETBINARY;
+    this.rawWebSocketMaxMessageSize = DEFAULT_RAWWEBSOCKETMAXMESSAGESIZE;
     this.prefix = DEFAULT_PREFIX;
     this.libraryURL = DEFAULT_LIBRARYURL;
   }
@@ -61,6 +76,11 @@ public class SockJSServerOptions {
     this.insertJSESSIONID = json.getBoolean("insertJSESSIONID", DEFAULT_INSERTSESSIONID);
     this.heartbeatPeriod = json.getLong("heartbeatPeriod", DEFAULT_HEARTBEATPERIOD);
     this.maxBytesStreaming = json.getInteger("maxBytesStreaming", DEFAULT_MAXBYTESSTREAMING);
+    this.streamingFlushDelay = json.getLong("streamingFlushDelay", DEFAULT_STREAMINGFLUSHDELAY);
+    this.pollHoldWindow = json.getLong("pollHoldWindow", DEFAULT_POLLHOLDWINDOW);
+    this.compressStreaming = json.getBoolean("compressStreaming", DEFAULT_COMPRESSSTREAMING);
+    this.rawWebSocketBinary = json.getBoolean("rawWebSocketBinary", DEFAULT_RAWWEBSOCKETBINARY);
+    this.rawWebSocketMaxMessageSize = json.getInteger("rawWebSocketMaxMessageSize", DEFAULT_RAWWEBSOCKETMAXMESSAGESIZE);
     this.prefix = json.getString("prefix", DEFAULT_PREFIX);
     this.libraryURL = json.getString("libraryURL", DEFAULT_LIBRARYURL);
     JsonArray arr = json.getJsonArray("disabledTransports");
@@ -121,6 +141,80 @@ public class SockJSServerOptions {
     return this;
   }
 
+  public long getStreamingFlushDelay() {
+    return streamingFlushDelay;
+  }
+
+  /**
+   * Gather the frames of the streaming transports (xhr_streaming, eventsource and htmlfile) into fewer chunks.
+   * A negative delay, the default, writes each frame as its own chunk, {@code 0} writes the frames of a session
+   * as one chunk once the current event loop task is done, and a positive delay writes them as one chunk after
+   * that many milliseconds.
+   */
+  public SockJSServerOptions setStreamingFlushDelay(long streamingFlushDelay) {
+    this.streamingFlushDelay = streamingFlushDelay;
+    return this;
+  }
+
+  public long getPollHoldWindow() {
+    return pollHoldWindow;
+  }
+
+  /**
+   * Hold the messages written to a session with a polling transport (xhr and jsonp) for that many milliseconds
+   * before ending the poll, so a burst of messages is sent in one response. {@code 0}, the default, ends the poll
+   * with the first message. The poll is ended at most about a millisecond after the window.
+   */
+  public SockJSServerOptions setPollHoldWindow(long pollHoldWindow) {
+    if (pollHoldWindow < 0) {
+      throw new IllegalArgumentException("pollHoldWindow must be >= 0");
+    }
+    this.pollHoldWindow = pollHoldWindow;
+    return this;
+  }
+
+  public boolean isCompressStreaming() {
+    return compressStreaming;
+  }
+
+  /**
+   * Compress the xhr_streaming and eventsource responses with gzip when the client accepts it. Every chunk is
+   * flushed by the compressor so messages aren't delayed, and the xhr_streaming prelude is sent uncompressed.
+   */
+  public SockJSServerOptions setCompressStreaming(boolean compressStreaming) {
+    this.compressStreaming = compressStreaming;
+    return this;
+  }
+
+  public boolean isRawWebSocketBinary() {
+    return rawWebSocketBinary;
+  }
+
+  /**
+   * Send the data written to the raw websocket sockets as binary frames, straight from the buffer. Inbound messages
+   * fragmented over several frames are then handed over whole.
+   */
+  public SockJSServerOptions setRawWebSocketBinary(boolean rawWebSocketBinary) {
+    this.rawWebSocketBinary = rawWebSocketBinary;
+    return this;
+  }
+
+  public int getRawWebSocketMaxMessageSize() {
+    return rawWebSocketMaxMessageSize;
+  }
+
+  /**
+   * The largest message a binary raw websocket reassembles from its frames, the socket is closed when a message
+   * gets larger.
+   */
+  public SockJSServerOptions setRawWebSocketMaxMessageSize(int rawWebSocketMaxMessageSize) {
+    if (rawWebSocketMaxMessageSize < 1) {
+      throw new IllegalArgumentException("rawWebSocketMaxMessageSize must be > 0");
+    }
+    this.rawWebSocketMaxMessageSize = rawWebSocketMaxMessageSize;
+    return this;
+  }
+
   public String getPrefix() {
     return prefix;
   }
@@ -20,6 +20,7 @@ import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
 import io.vertx.core.VoidHandler;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.impl.StringEscapeUtils;
@@ -34,7 +35,9 @@ import io.vertx.ext.sockjs.Transport;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.vertx.core.buffer.Buffer.*;
 
 /**
  * @author <a href="http://tfox.org">Tim Fox</a>
@@ -47,33 +50,64 @@ class BaseTransport {
   protected final LocalMap<String, Session> sessions;
   protected SockJSServerOptions options;
 
-  protected static final String COMMON_PATH_ELEMENT_RE = "\\/[^\\/\\.]+\\/([^\\/\\.]+)\\/";
-
   private static final long RAND_OFFSET = 2L << 30;
 
+  static final long ONE_YEAR_SECONDS = 365 * 24 * 60 * 60;
+  private static final String ONE_YEAR_SECONDS_STRING = String.valueOf(ONE_YEAR_SECONDS);
+  static final String ONE_YEAR_CACHE_CONTROL = "public,max-age=" + ONE_YEAR_SECONDS;
+  private static final String NO_CACHE_CONTROL = "no-store, no-cache, must-revalidate, max-age=0";
+
+  // The one year Expires header is only formatted again when the second it was formatted for has passed
+  private static volatile ExpiresHeader expiresHeader;
+
   public BaseTransport(Vertx vertx, LocalMap<String, Session> sessions, SockJSServerOptions options) {
     this.vertx = vertx;
     this.sessions = sessions;
     this.options = options;
   }
 
-  protected Session getSession(long timeout, long heartbeatPeriod, String sessionID,
-                               Handler<SockJSSocket> sockHandler) {
+  protected Session getSession(long timeout, String sessionID, Handler<SockJSSocket> sockHandler) {
     Session session = sessions.get(sessionID);
     if (session == null) {
-      session = new Session(vertx, sessions, sessionID, timeout, heartbeatPeriod, sockHandler);
+      session = new Session(vertx, sessions, sessionID, timeout, options.getHeartbeatPeriod(), options.getPollHoldWindow(),
+        sockHandler);
       sessions.put(sessionID, session);
     }
     return session;
   }
 
+  // Streaming responses are compressed when it's enabled and the client accepts gzip
+  protected GzipEncoder createGzipEncoder(HttpServerRequest req) {
+    if (options.isCompressStreaming()) {
+      String acceptEncoding = req.headers().get("Accept-Encoding");
+      if (acceptEncoding != null && acceptsGzip(acceptEncoding)) {
+        req.response().headers().set("Content-Encoding", "gzip");
+        req.response().headers().set("Vary", "Accept-Encoding");
+        return new GzipEncoder();
+      }
+    }
+    return null;
+  }
+
+  static boolean acceptsGzip(String acceptEncoding) {
+    for (String coding : acceptEncoding.split(",")) {
+      int semi = coding.indexOf(';');
+      String name = (semi == -1 ? coding : coding.substring(0, semi)).trim();
+      if (name.equalsIgnoreCase("gzip")) {
+        // A zero quality value means not acceptable
+        return semi == -1 || !coding.substring(semi + 1).replace(" ", "").matches("[qQ]=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
   protected void sendInvalidJSON(HttpServerResponse response) {
     if (log.isTraceEnabled()) log.trace("Broken JSON");
     response.setStatusCode(500);
     response.end("Broken JSON encoding.");
   }
 
-  protected String escapeForJavaScript(String str) {
+  protected static String escapeForJavaScript(String str) {
     try {
        str = StringEscapeUtils.escapeJavaScript(str);
     } catch (Exception e) {
@@ -95,15 +129,23 @@ class BaseTransport {
     protected void addCloseHandler(HttpServerResponse resp, final Session session) {
       resp.closeHandler(new VoidHandler() {
         public void handle() {
-          if (log.isTraceEnabled()) log.trace("Connection closed (from client?), closing session");
-          // Connection has been closed from the client or network error so
-          // we remove the session
-          session.shutdown();
-          closed = true;
+          // Polling responses keep their connection once ended, closing it later must not end the session
+          if (!closed) {
+            if (log.isTraceEnabled()) log.trace("Connection closed (from client?), closing session");
+            // Connection has been closed from the client or network error so
+            // we remove the session
+            session.shutdown();
+            closed = true;
+            connectionClosed();
+          }
         }
       });
     }
 
+    // Called when the connection is closed before the listener was closed
+    protected void connectionClosed() {
+    }
+
     @Override
     public void sessionClosed() {
       session.writeClosed(this);
@@ -150,39 +192,54 @@ class BaseTransport {
   }
 
   static Handler<HttpServerRequest> createInfoHandler(final SockJSServerOptions options) {
-    return new Handler<HttpServerRequest>() {
-      boolean websocket = !options.getDisabledTransports().contains(Transport.WEBSOCKET.toString());
-      public void handle(HttpServerRequest req) {
-        if (log.isTraceEnabled()) log.trace("In Info handler");
-        req.response().headers().set("Content-Type", "application/json; charset=UTF-8");
-        setNoCacheHeaders(req);
-        JsonObject json = new JsonObject();
-        json.put("websocket", websocket);
-        json.put("cookie_needed", options.isInsertJSESSIONID());
-        json.put("origins", new JsonArray().add("*:*"));
-        // Java ints are signed, so we need to use a long and add the offset so
-        // the result is not negative
-        json.put("entropy", RAND_OFFSET + new Random().nextInt());
-        setCORS(req);
-        req.response().end(json.encode());
-      }
+    // Everything but the entropy is fixed, so the start of the body is only encoded once
+    JsonObject json = new JsonObject();
+    json.put("websocket", !options.getDisabledTransports().contains(Transport.WEBSOCKET.toString()));
+    json.put("cookie_needed", options.isInsertJSESSIONID());
+    json.put("origins", new JsonArray().add("*:*"));
+    json.put("entropy", 0);
+    String encoded = json.encode();
+    Buffer bodyStart = buffer(encoded.substring(0, encoded.lastIndexOf(':') + 1));
+    return req -> {
+      if (log.isTraceEnabled()) log.trace("In Info handler");
+      req.response().headers().set("Content-Type", "application/json; charset=UTF-8");
+      setNoCacheHeaders(req);
+      // Java ints are signed, so we need to use a long and add the offset so
+      // the result is not negative
+      long entropy = RAND_OFFSET + ThreadLocalRandom.current().nextInt();
+      Buffer body = buffer(bodyStart.length() + 12).appendBuffer(bodyStart).appendString(String.valueOf(entropy))
+        .appendByte((byte) '}');
+      setCORS(req);
+      req.response().end(body);
     };
   }
 
   static void setNoCacheHeaders(HttpServerRequest req) {
-    req.response().headers().set("Cache-Control", "no-store, no-cache, must-revalidate, max-age=0");
+    req.response().headers().set("Cache-Control", NO_CACHE_CONTROL);
+  }
+
+  /**
+   * @return the value of an Expires header one year from now
+   */
+  static String oneYearExpires() {
+    long now = System.currentTimeMillis();
+    long second = now / 1000;
+    ExpiresHeader header = expiresHeader;
+    if (header == null || header.second != second) {
+      Date expires = new Date(now + ONE_YEAR_SECONDS * 1000);
+      header = new ExpiresHeader(second, new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").format(expires));
+      expiresHeader = header;
+    }
+    return header.value;
   }
 
   static Handler<HttpServerRequest> createCORSOptionsHandler(SockJSServerOptions options, String methods) {
     return req -> {
       if (log.isTraceEnabled()) log.trace("In CORS options handler");
-      req.response().headers().set("Cache-Control", "public,max-age=31536000");
-      long oneYearSeconds = 365 * 24 * 60 * 60;
-      long oneYearms = oneYearSeconds * 1000;
-      String expires = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").format(new Date(System.currentTimeMillis() + oneYearms));
-      req.response().headers().set("Expires", expires);
+      req.response().headers().set("Cache-Control", ONE_YEAR_CACHE_CONTROL);
+      req.response().headers().set("Expires", oneYearExpires());
       req.response().headers().set("Access-Control-Allow-Methods", methods);
-      req.response().headers().set("Access-Control-Max-Age", String.valueOf(oneYearSeconds));
+      req.response().headers().set("Access-Control-Max-Age", ONE_YEAR_SECONDS_STRING);
       setCORS(req);
       setJSESSIONID(options, req);
       req.response().setStatusCode(204);
@@ -209,4 +266,14 @@ class BaseTransport {
 
     return headers;
   }
+
+  private static final class ExpiresHeader {
+    final long second;
+    final String value;
+
+    ExpiresHeader(long second, String value) {
+      this.second = second;
+      this.value = value;
+    }
+  }
 }
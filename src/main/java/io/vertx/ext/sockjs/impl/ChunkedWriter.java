@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+import static io.vertx.core.buffer.Buffer.*;
+
+/**
+ * Writes the frames of a streaming transport to its chunked response.<p>
+ * With a negative flush delay each frame is written as its own chunk. Otherwise the frames written until the flush
+ * are gathered into a single chunk, the flush happens once the current event loop task is done when the delay
+ * is {@code 0}, or after the delay in milliseconds. The delay is a timeout on the millisecond wheel of the context,
+ * see {@link ContextTimers}, so a flush doesn't create a Vert.x timer.<p>
+ * When the response is compressed every chunk goes through the {@link GzipEncoder}, so a chunk is always
+ * flushed by the encoder and can be inflated as soon as it arrives.<p>
+ * Instances of this class are used on the context of the session only.<p>
+ */
+final class ChunkedWriter {
+
+  private final Vertx vertx;
+  private final HttpServerResponse response;
+  private final long flushDelay;
+  private final GzipEncoder gzip;
+  private Buffer pending;
+  private boolean pendingCopied;
+  private boolean flushScheduled;
+  private TimerWheel.Timeout flushTimeout;
+  private TimerWheel flushWheel;
+  private boolean ended;
+
+  ChunkedWriter(Vertx vertx, HttpServerResponse response, long flushDelay, GzipEncoder gzip) {
+    this.vertx = vertx;
+    this.response = response;
+    this.flushDelay = flushDelay;
+    this.gzip = gzip;
+  }
+
+  /**
+   * Write the first chunk of the response, it isn't compressed so it keeps its size on the wire
+   */
+  void writePrelude(Buffer prelude) {
+    if (ended) {
+      return;
+    }
+    response.write(gzip == null ? FrameEncoder.writable(prelude) : gzip.store(prelude));
+  }
+
+  void write(Buffer chunk) {
+    if (ended) {
+      // The response has been ended or the connection closed, and the encoder released
+      return;
+    }
+    if (flushDelay < 0) {
+      response.write(encode(chunk));
+      return;
+    }
+    if (pending == null) {
+      // Frames can be shared by many sockets, so a frame is only copied once another one has to be appended to it
+      pending = chunk;
+    } else if (!pendingCopied) {
+      pending = buffer(2 * (pending.length() + chunk.length())).appendBuffer(pending).appendBuffer(chunk);
+      pendingCopied = true;
+    } else {
+      pending.appendBuffer(chunk);
+    }
+    if (!flushScheduled) {
+      flushScheduled = true;
+      if (flushDelay == 0) {
+        vertx.runOnContext(v -> flush());
+      } else {
+        if (flushTimeout == null) {
+          flushTimeout = new TimerWheel.Timeout(v -> flush());
+          flushWheel = ContextTimers.forContext(vertx, vertx.getOrCreateContext()).fineWheel();
+        }
+        flushWheel.schedule(flushTimeout, flushDelay);
+      }
+    }
+  }
+
+  /**
+   * End the response, the gathered frames are sent with the last chunk
+   */
+  void end() {
+    if (ended) {
+      return;
+    }
+    ended = true;
+    cancelFlush();
+    Buffer last = pending;
+    pending = null;
+    if (gzip != null) {
+      // The frames go before the trailer, finishing the member releases the encoder
+      Buffer compressed = last == null ? null : gzip.compress(last);
+      Buffer trailer = gzip.finish();
+      last = compressed == null ? trailer : compressed.appendBuffer(trailer);
+    } else if (last != null) {
+      last = FrameEncoder.writable(last);
+    }
+    if (last != null) {
+      response.end(last);
+    } else {
+      response.end();
+    }
+  }
+
+  /**
+   * Release the writer when the connection has been closed without the response being ended
+   */
+  void release() {
+    if (!ended) {
+      ended = true;
+      cancelFlush();
+      pending = null;
+      if (gzip != null) {
+        gzip.release();
+      }
+    }
+  }
+
+  private void flush() {
+    flushScheduled = false;
+    if (!ended && pending != null) {
+      Buffer chunk = pending;
+      pending = null;
+      pendingCopied = false;
+      try {
+        response.write(encode(chunk));
+      } catch (IllegalStateException e) {
+        // Underlying connection might already be closed - that's fine
+      }
+    }
+  }
+
+  private void cancelFlush() {
+    if (flushTimeout != null) {
+      flushWheel.cancel(flushTimeout);
+    }
+  }
+
+  private Buffer encode(Buffer chunk) {
+    return gzip == null ? FrameEncoder.writable(chunk) : gzip.compress(chunk);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The timers of the sessions owned by one context: the wheel their deadlines are scheduled on, a millisecond
+ * wheel for the short delays of their responses, and their heartbeat sweeps.<p>
+ * One instance is kept per context and shared by all the SockJS servers of the Vert.x instance, like the
+ * sessions are. It is only used on its own context, so none of it is locked and the handlers of its timeouts
+ * are called on that context. The timers of a context are kept as long as the Vert.x instance, their wheel
+ * doesn't tick while nothing is scheduled on it.<p>
+ */
+final class ContextTimers {
+
+  // Session heartbeats and timeouts are scheduled on a timer wheel with this resolution
+  private static final long TICK = 100;
+  private static final int WHEEL_SIZE = 512;
+  // Flush delays and poll hold windows are a few milliseconds, they are scheduled on a wheel that ticks every
+  // millisecond, and only while one of them is pending
+  private static final long FINE_TICK = 1;
+  private static final int FINE_WHEEL_SIZE = 256;
+
+  private final TimerWheel wheel;
+  private final TimerWheel fineWheel;
+  private final Map<Long, HeartbeatSweep> heartbeats = new HashMap<>();
+
+  private ContextTimers(Vertx vertx) {
+    this.wheel = new TimerWheel(vertx, TICK, WHEEL_SIZE);
+    this.fineWheel = new TimerWheel(vertx, FINE_TICK, FINE_WHEEL_SIZE);
+  }
+
+  /**
+   * @return the timers of the context, must be called on that context
+   */
+  static ContextTimers forContext(Vertx vertx, Context context) {
+    LocalMap<String, Registry> map = vertx.sharedData().getLocalMap("_vertx.sockjstimers");
+    Registry registry = map.get("timers");
+    if (registry == null) {
+      registry = new Registry();
+      Registry existing = map.putIfAbsent("timers", registry);
+      if (existing != null) {
+        registry = existing;
+      }
+    }
+    return registry.timers.computeIfAbsent(context, ctx -> new ContextTimers(vertx));
+  }
+
+  TimerWheel wheel() {
+    return wheel;
+  }
+
+  /**
+   * @return the wheel with a millisecond resolution, a timeout scheduled on it fires at most a millisecond late
+   */
+  TimerWheel fineWheel() {
+    return fineWheel;
+  }
+
+  /**
+   * @return the sweep sending the heartbeats of the sessions of this context with that period
+   */
+  HeartbeatSweep heartbeats(long period) {
+    return heartbeats.computeIfAbsent(period, p -> new HeartbeatSweep(wheel, p));
+  }
+
+  private static final class Registry implements Shareable {
+    final ConcurrentMap<Context, ContextTimers> timers = new ConcurrentHashMap<>();
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.sockjs.SockJSSocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static io.vertx.core.buffer.Buffer.*;
+
+/**
+ * A message written to many sockets, escaped once and shared by all of them.<p>
+ * Sessions with nothing queued send the message frame, sessions with queued messages queue the escaped message.
+ * Transports that wrap frames keep their wrapped frame here too, so it's only built once per transport.<p>
+ * The buffers are only read once built, so they can be used from any thread. Writing a buffer releases it, so they
+ * are written to connections from a retained duplicate, see {@link FrameEncoder#writable}.<p>
+ */
+final class EncodedMessage {
+
+  private final Buffer message;
+  private final Buffer element;
+  private volatile Buffer frame;
+  private volatile String frameText;
+  private final Map<Function<Buffer, Buffer>, Buffer> transportFrames = new ConcurrentHashMap<>(4);
+
+  EncodedMessage(Buffer message) {
+    this.message = message;
+    this.element = buffer(message.length() + 2);
+    FrameEncoder.appendString(element, message);
+  }
+
+  Buffer message() {
+    return message;
+  }
+
+  /**
+   * @return the quoted and escaped message
+   */
+  Buffer element() {
+    return element;
+  }
+
+  /**
+   * @return the frame holding this message only
+   */
+  Buffer frame() {
+    Buffer f = frame;
+    if (f == null) {
+      // Two threads can both build it, the frames are the same
+      f = FrameEncoder.encodeMessage(element);
+      frame = f;
+    }
+    return f;
+  }
+
+  /**
+   * @return the frame holding this message as a string, for the transports that write text
+   */
+  String frameText() {
+    String text = frameText;
+    if (text == null) {
+      text = frame().toString();
+      frameText = text;
+    }
+    return text;
+  }
+
+  /**
+   * @return the frame holding this message wrapped by the transport, the format function identifies the transport
+   */
+  Buffer frame(Function<Buffer, Buffer> format) {
+    return transportFrames.computeIfAbsent(format, f -> f.apply(frame()));
+  }
+
+  void writeTo(SockJSSocket sock) {
+    if (sock instanceof Session) {
+      ((Session) sock).write(this);
+    } else {
+      sock.write(message);
+    }
+  }
+}
@@ -32,15 +32,14 @@ import io.vertx.core.logging.impl.LoggerFactory;
 import io.vertx.ext.sockjs.BridgeOptions;
 import io.vertx.ext.sockjs.EventBusBridgeHook;
 import io.vertx.ext.sockjs.SockJSSocket;
+import io.vertx.ext.sockjs.impl.PermissionMatcher.Match;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static io.vertx.core.buffer.Buffer.*;
 
@@ -55,10 +54,10 @@ public class EventBusBridge implements Handler<SockJSSocket> {
 
   private static final Logger log = LoggerFactory.getLogger(EventBusBridge.class);
 
-  private final Map<String, Auth> authCache = new HashMap<>();
+  private final ExpiringMap<String, SockJSSocket> authCache;
   private final Map<SockJSSocket, SockInfo> sockInfos = new HashMap<>();
-  private final List<JsonObject> inboundPermitted;
-  private final List<JsonObject> outboundPermitted;
+  private final PermissionMatcher inboundPermitted;
+  private final PermissionMatcher outboundPermitted;
   private final long authTimeout;
   private final String authAddress;
   private final int maxAddressLength;
@@ -67,34 +66,43 @@ public class EventBusBridge implements Handler<SockJSSocket> {
   private final long replyTimeout;
   private final Vertx vertx;
   private final EventBus eb;
-  private final Set<String> acceptedReplyAddresses = new HashSet<>();
-  private final Map<String, Pattern> compiledREs = new HashMap<>();
+  private final ExpiringMap<String, Boolean> acceptedReplyAddresses;
+  private final ExpiringMap<SockJSSocket, Boolean> liveSockets;
+  private final boolean sharedConsumers;
+  private final Map<String, Subscription> subscriptions = new HashMap<>();
   private EventBusBridgeHook hook;
 
   private static final class SockInfo {
     Set<String> sockAuths;
     int handlerCount;
-    PingInfo pingInfo;
+    long lastLive;
   }
 
   public EventBusBridge(Vertx vertx, BridgeOptions options) {
     this.vertx = vertx;
     this.eb = vertx.eventBus();
-    this.inboundPermitted = options.getInboundPermitteds() == null ? new ArrayList<>() : options.getInboundPermitteds();
-    this.outboundPermitted = options.getOutboundPermitteds() == null ? new ArrayList<>() : options.getOutboundPermitteds();
+    // The rules stay live, they are compiled again when the options' lists change
+    this.inboundPermitted = new PermissionMatcher(options.getInboundPermitteds() == null ?
+      new ArrayList<>() : options.getInboundPermitteds());
+    this.outboundPermitted = new PermissionMatcher(options.getOutboundPermitteds() == null ?
+      new ArrayList<>() : options.getOutboundPermitteds());
     this.authTimeout = options.getAuthTimeout();
     this.authAddress = options.getAuthAddress();
     this.maxAddressLength = options.getMaxAddressLength();
     this.maxHandlersPerSocket = options.getMaxHandlersPerSocket();
     this.pingTimeout = options.getPingTimeout();
     this.replyTimeout = options.getReplyTimeout();
+    this.authCache = new ExpiringMap<>(vertx, authTimeout, this::uncacheAuthorisation);
+    this.acceptedReplyAddresses = new ExpiringMap<>(vertx, replyTimeout, null);
+    this.liveSockets = new ExpiringMap<>(vertx, pingTimeout, this::handlePingTimeout);
+    this.sharedConsumers = options.isSharedConsumers();
   }
 
-  private void handleSocketClosed(SockJSSocket sock, Map<String, MessageConsumer> registrations) {
+  private void handleSocketClosed(SockJSSocket sock, Map<String, Runnable> registrations) {
     // On close unregister any handlers that haven't been unregistered
     registrations.entrySet().forEach(entry -> {
       handleUnregister(sock, entry.getKey());
-      entry.getValue().unregister();
+      entry.getValue().run();
     });
 
     //Close any cached authorisations for this connection
@@ -103,22 +111,17 @@ public class EventBusBridge implements Handler<SockJSSocket> {
       Set<String> auths = info.sockAuths;
       if (auths != null) {
         for (String sessionID: auths) {
-          Auth auth = authCache.remove(sessionID);
-          if (auth != null) {
-            auth.cancel();
-          }
+          authCache.remove(sessionID);
         }
       }
-      PingInfo pingInfo = info.pingInfo;
-      if (pingInfo != null) {
-        vertx.cancelTimer(pingInfo.timerID);
-      }
     }
+    liveSockets.remove(sock);
 
     handleSocketClosed(sock);
   }
 
-  private void handleSocketData(SockJSSocket sock, Buffer data, Map<String, MessageConsumer> registrations) {
+  private void handleSocketData(SockJSSocket sock, Buffer data, Map<String, Runnable> registrations) {
+    internalHandlePing(sock);
     JsonObject msg = new JsonObject(data.toString());
 
     String type = getMandatoryString(msg, "type");
@@ -140,7 +143,7 @@ public class EventBusBridge implements Handler<SockJSSocket> {
         internalHandleUnregister(sock, address, registrations);
         break;
       case "ping":
-        internalHandlePing(sock);
+        // Like any data the ping has already made the socket live again
         break;
       default:
         throw new IllegalStateException("Invalid type: " + type);
@@ -162,7 +165,7 @@ public class EventBusBridge implements Handler<SockJSSocket> {
     }
   }
 
-  private void internalHandleRegister(SockJSSocket sock, JsonObject message, String address, Map<String, MessageConsumer> registrations) {
+  private void internalHandleRegister(SockJSSocket sock, JsonObject message, String address, Map<String, Runnable> registrations) {
     if (address.length() > maxAddressLength) {
       log.error("Refusing to register as address length > max_address_length");
       return;
@@ -174,7 +177,18 @@ public class EventBusBridge implements Handler<SockJSSocket> {
     if (handlePreRegister(sock, address)) {
       final boolean debug = log.isDebugEnabled();
       Match match = checkMatches(false, address, message);
-      if (match.doesMatch) {
+      if (match.doesMatch && sharedConsumers) {
+        Subscription subscription = subscriptions.get(address);
+        if (subscription == null) {
+          subscription = new Subscription(address);
+          subscriptions.put(address, subscription);
+        }
+        subscription.add(sock, info);
+        Subscription sub = subscription;
+        registrations.put(address, () -> sub.remove(sock));
+        handlePostRegister(sock, address);
+        info.handlerCount++;
+      } else if (match.doesMatch) {
         Handler<Message<Object>> handler = msg -> {
           Match curMatch = checkMatches(false, address, msg.body());
           if (curMatch.doesMatch) {
@@ -195,7 +209,7 @@ public class EventBusBridge implements Handler<SockJSSocket> {
           }
         };
         MessageConsumer reg = eb.consumer(address).handler(handler);
-        registrations.put(address, reg);
+        registrations.put(address, reg::unregister);
         handlePostRegister(sock, address);
         info.handlerCount++;
       } else {
@@ -207,21 +221,41 @@ public class EventBusBridge implements Handler<SockJSSocket> {
     }
   }
 
-  private void internalHandleUnregister(SockJSSocket sock, String address, Map<String, MessageConsumer> registrations) {
+  private void internalHandleUnregister(SockJSSocket sock, String address, Map<String, Runnable> registrations) {
     if (handleUnregister(sock, address)) {
-      MessageConsumer reg = registrations.remove(address);
+      Runnable reg = registrations.remove(address);
       if (reg != null) {
-        reg.unregister();
+        reg.run();
         SockInfo info = sockInfos.get(sock);
         info.handlerCount--;
       }
     }
   }
 
+  // Any data received from the socket counts as a ping
   private void internalHandlePing(final SockJSSocket sock) {
     SockInfo info = sockInfos.get(sock);
     if (info != null) {
-      info.pingInfo.lastPing = System.currentTimeMillis();
+      info.lastLive = System.currentTimeMillis();
+    }
+  }
+
+  // Called by the sweep of the live sockets when a socket was put in them the ping timeout ago
+  private void handlePingTimeout(SockJSSocket sock, Boolean live) {
+    SockInfo info = sockInfos.get(sock);
+    if (info == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (now - info.lastLive < pingTimeout) {
+      // The socket sent something since, check it again in a ping timeout
+      liveSockets.put(sock, Boolean.TRUE, now);
+    } else if (sock instanceof Session && now - ((Session) sock).lastConnectedTime() < pingTimeout) {
+      // The SockJS session still has its transport connection, or had it recently, so its heartbeats keep it live
+      liveSockets.put(sock, Boolean.TRUE, now);
+    } else {
+      // We didn't receive a ping in time so close the socket
+      sock.close();
     }
   }
 
@@ -229,22 +263,16 @@ public class EventBusBridge implements Handler<SockJSSocket> {
     if (!handleSocketCreated(sock)) {
       sock.close();
     } else {
-      final Map<String, MessageConsumer> registrations = new HashMap<>();
+      final Map<String, Runnable> registrations = new HashMap<>();
 
       sock.endHandler(v ->  handleSocketClosed(sock, registrations));
       sock.handler(data ->  handleSocketData(sock, data, registrations));
 
-      // Start a checker to check for pings
-      final PingInfo pingInfo = new PingInfo();
-      pingInfo.timerID = vertx.setPeriodic(pingTimeout, id -> {
-        if (System.currentTimeMillis() - pingInfo.lastPing >= pingTimeout) {
-          // We didn't receive a ping in time so close the socket
-          sock.close();
-        }
-      });
       SockInfo sockInfo = new SockInfo();
-      sockInfo.pingInfo = pingInfo;
+      sockInfo.lastLive = System.currentTimeMillis();
       sockInfos.put(sock, sockInfo);
+      // The socket must send something within the ping timeout, one sweep checks all the sockets
+      liveSockets.put(sock, Boolean.TRUE, sockInfo.lastLive);
     }
   }
 
@@ -254,9 +282,8 @@ public class EventBusBridge implements Handler<SockJSSocket> {
       // When the reply comes through we want to accept it irrespective of its address
       // Since all replies are implicitly accepted if the original message was accepted
       // So we cache the reply address, so we can check against it
-      acceptedReplyAddresses.add(replyAddress);
-      // And we remove after timeout in case the reply never comes
-      vertx.setTimer(replyTimeout, id ->  acceptedReplyAddresses.remove(replyAddress));
+      // It expires after the reply timeout in case the reply never comes
+      acceptedReplyAddresses.put(replyAddress, Boolean.TRUE);
     }
   }
 
@@ -269,11 +296,15 @@ public class EventBusBridge implements Handler<SockJSSocket> {
   }
 
   private static void deliverMessage(SockJSSocket sock, String address, Message message) {
+    sock.write(encodeEnvelope(address, message));
+  }
+
+  private static Buffer encodeEnvelope(String address, Message message) {
     JsonObject envelope = new JsonObject().put("address", address).put("body", message.body());
     if (message.replyAddress() != null) {
       envelope.put("replyAddress", message.replyAddress());
     }
-    sock.write(buffer(envelope.encode()));
+    return buffer(envelope.encode());
   }
 
   private void doSendOrPub(boolean send, SockJSSocket sock, String address,
@@ -400,52 +431,12 @@ public class EventBusBridge implements Handler<SockJSSocket> {
    */
   private Match checkMatches(boolean inbound, String address, Object body) {
 
-    if (inbound && acceptedReplyAddresses.remove(address)) {
+    if (inbound && acceptedReplyAddresses.remove(address) != null) {
       // This is an inbound reply, so we accept it
-      return new Match(true, false);
+      return PermissionMatcher.MATCH;
     }
 
-    List<JsonObject> matches = inbound ? inboundPermitted : outboundPermitted;
-
-    for (JsonObject matchHolder: matches) {
-      String matchAddress = matchHolder.getString("address");
-      String matchRegex;
-      if (matchAddress == null) {
-        matchRegex = matchHolder.getString("address_re");
-      } else {
-        matchRegex = null;
-      }
-
-      boolean addressOK;
-      if (matchAddress == null) {
-        if (matchRegex == null) {
-          addressOK = true;
-        } else {
-          addressOK = regexMatches(matchRegex, address);
-        }
-      } else {
-        addressOK = matchAddress.equals(address);
-      }
-
-      if (addressOK) {
-        boolean matched = structureMatches(matchHolder.getJsonObject("match"), body);
-        if (matched) {
-          Boolean b = matchHolder.getBoolean("requires_auth");
-          return new Match(true, b != null && b);
-        }
-      }
-    }
-    return new Match(false, false);
-  }
-
-  private boolean regexMatches(String matchRegex, String address) {
-    Pattern pattern = compiledREs.get(matchRegex);
-    if (pattern == null) {
-      pattern = Pattern.compile(matchRegex);
-      compiledREs.put(matchRegex, pattern);
-    }
-    Matcher m = pattern.matcher(address);
-    return m.matches();
+    return (inbound ? inboundPermitted : outboundPermitted).match(address, body);
   }
 
   private static void replyStatus(SockJSSocket sock, String replyAddress, String status) {
@@ -454,34 +445,9 @@ public class EventBusBridge implements Handler<SockJSSocket> {
     sock.write(buffer(envelope.encode()));
   }
 
-  private static boolean structureMatches(JsonObject match, Object bodyObject) {
-    if (match == null) return true;
-    if (bodyObject == null) return false;
-
-    // Can send message other than JSON too - in which case we can't do deep matching on structure of message
-    if (bodyObject instanceof JsonObject) {
-      JsonObject body = (JsonObject) bodyObject;
-      for (String fieldName : match.fieldNames()) {
-        Object mv = match.getValue(fieldName);
-        Object bv = body.getValue(fieldName);
-        // Support deep matching
-        if (mv instanceof JsonObject) {
-          if (!structureMatches((JsonObject) mv, bv)) {
-            return false;
-          }
-        } else if (!match.getValue(fieldName).equals(body.getValue(fieldName))) {
-          return false;
-        }
-      }
-      return true;
-    }
-
-    return false;
-  }
-
   private void cacheAuthorisation(String sessionID, SockJSSocket sock) {
     if (!authCache.containsKey(sessionID)) {
-      authCache.put(sessionID, new Auth(sessionID, sock));
+      authCache.put(sessionID, sock);
     }
     SockInfo sockInfo = sockInfos.get(sock);
     Set<String> sess = sockInfo.sockAuths;
@@ -504,28 +470,82 @@ public class EventBusBridge implements Handler<SockJSSocket> {
     }
   }
   
-  private static class Match {
-    public final boolean doesMatch;
-    public final boolean requiresAuth;
-
-    Match(final boolean doesMatch, final boolean requiresAuth) {
-      this.doesMatch = doesMatch;
-      this.requiresAuth = requiresAuth;
-    }
-
-  }
-
-  private class Auth {
-    private final long timerID;
-
-    Auth(final String sessionID, final SockJSSocket sock) {
-      timerID = vertx.setTimer(authTimeout, id -> uncacheAuthorisation(sessionID, sock));
+  /*
+  The sockets registered for an address when consumers are shared, they get the messages of one consumer.
+  The outbound check runs and the envelope is encoded once per message, messages expecting a reply go to
+  a single socket so they are only answered once.
+   */
+  private final class Subscription implements Handler<Message<Object>> {
+    private final String address;
+    private final Map<SockJSSocket, SockInfo> subscribers = new LinkedHashMap<>();
+    private final MessageConsumer<Object> consumer;
+    // Rebuilt when the subscribers change, writing to a socket can end up removing it
+    private SockJSSocket[] socks;
+    private int next;
+
+    Subscription(String address) {
+      this.address = address;
+      this.consumer = eb.consumer(address).handler(this);
+    }
+
+    void add(SockJSSocket sock, SockInfo info) {
+      subscribers.put(sock, info);
+      socks = null;
+    }
+
+    void remove(SockJSSocket sock) {
+      if (subscribers.remove(sock) != null) {
+        socks = null;
+        if (subscribers.isEmpty()) {
+          consumer.unregister();
+          subscriptions.remove(address);
+        }
+      }
     }
 
-    void cancel() {
-      vertx.cancelTimer(timerID);
+    public void handle(Message<Object> msg) {
+      final boolean debug = log.isDebugEnabled();
+      Match curMatch = checkMatches(false, address, msg.body());
+      if (!curMatch.doesMatch) {
+        // outbound match failed
+        if (debug) {
+          log.debug("Outbound message for address " + address + " rejected because there is no inbound match");
+        }
+        return;
+      }
+      SockJSSocket[] targets = socks;
+      if (targets == null) {
+        targets = subscribers.keySet().toArray(new SockJSSocket[subscribers.size()]);
+        socks = targets;
+      }
+      EncodedMessage encoded = null;
+      int count = targets.length;
+      int start = 0;
+      if (msg.replyAddress() != null && count > 0) {
+        count = 1;
+        start = next % targets.length;
+        next = start + 1;
+      }
+      for (int i = 0; i < targets.length && count > 0; i++) {
+        SockJSSocket sock = targets[(start + i) % targets.length];
+        SockInfo info = subscribers.get(sock);
+        if (info == null) {
+          continue;
+        }
+        if (curMatch.requiresAuth && info.sockAuths == null) {
+          if (debug) {
+            log.debug("Outbound message for address " + address + " rejected because auth is required and socket is not authed");
+          }
+          continue;
+        }
+        if (encoded == null) {
+          checkAddAccceptedReplyAddress(msg.replyAddress());
+          encoded = new EncodedMessage(encodeEnvelope(address, msg));
+        }
+        encoded.writeTo(sock);
+        count--;
+      }
     }
-
   }
 
   // Hook
@@ -629,10 +649,4 @@ public class EventBusBridge implements Handler<SockJSSocket> {
     }
   }
 
-
-  private static final class PingInfo {
-    long lastPing;
-    long timerID;
-  }
-
 }
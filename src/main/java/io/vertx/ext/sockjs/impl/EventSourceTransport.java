@@ -27,6 +27,8 @@ import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.sockjs.SockJSServerOptions;
 import io.vertx.ext.sockjs.SockJSSocket;
 
+import java.util.function.Function;
+
 import static io.vertx.core.buffer.Buffer.*;
 
 /**
@@ -36,16 +38,22 @@ class EventSourceTransport extends BaseTransport {
 
   private static final Logger log = LoggerFactory.getLogger(EventSourceTransport.class);
 
-  EventSourceTransport(Vertx vertx,RouteMatcher rm, String basePath, LocalMap<String, Session> sessions, SockJSServerOptions options,
-                       Handler<SockJSSocket> sockHandler) {
-    super(vertx, sessions, options);
+  private static final Buffer DATA_PREFIX = buffer("data: ");
+  private static final Buffer DATA_SUFFIX = buffer("\r\n\r\n");
+  private static final Buffer CRLF = buffer("\r\n");
+  private static final Buffer HEARTBEAT_FRAME = buffer("data: h\r\n\r\n");
+  private static final Function<Buffer, Buffer> FRAME_FORMAT = frame ->
+    buffer(frame.length() + DATA_PREFIX.length() + DATA_SUFFIX.length())
+      .appendBuffer(DATA_PREFIX).appendBuffer(frame).appendBuffer(DATA_SUFFIX);
 
-    String eventSourceRE = basePath + COMMON_PATH_ELEMENT_RE + "eventsource";
+  EventSourceTransport(Vertx vertx, TransportDispatcher dispatcher, String basePath, LocalMap<String, Session> sessions,
+                       SockJSServerOptions options, Handler<SockJSSocket> sockHandler) {
+    super(vertx, sessions, options);
 
-    rm.matchMethodWithRegEx(HttpMethod.GET, eventSourceRE, req -> {
+    dispatcher.route(basePath, "eventsource", HttpMethod.GET, req -> {
       if (log.isTraceEnabled()) log.trace("EventSource transport, get: " + req.uri());
       String sessionID = req.params().get("param0");
-      Session session = getSession(options.getSessionTimeout(), options.getHeartbeatPeriod(), sessionID, sockHandler);
+      Session session = getSession(options.getSessionTimeout(), sessionID, sockHandler);
       session.setInfo(req.localAddress(), req.remoteAddress(), req.uri(), req.headers());
       session.register(new EventSourceListener(options.getMaxBytesStreaming(), req, session));
     });
@@ -54,32 +62,44 @@ class EventSourceTransport extends BaseTransport {
   private class EventSourceListener extends BaseListener {
 
     final int maxBytesStreaming;
+    final ChunkedWriter writer;
     boolean headersWritten;
     int bytesSent;
-    boolean closed;
 
     EventSourceListener(int maxBytesStreaming, HttpServerRequest req, Session session) {
       super(req, session);
       this.maxBytesStreaming = maxBytesStreaming;
+      this.writer = new ChunkedWriter(vertx, req.response(), options.getStreamingFlushDelay(), createGzipEncoder(req));
       addCloseHandler(req.response(), session);
     }
 
-    public void sendFrame(String body) {
+    protected void connectionClosed() {
+      writer.release();
+    }
+
+    public void sendFrame(Buffer frame) {
+      writeFrame(FRAME_FORMAT.apply(frame));
+    }
+
+    public void sendFrame(EncodedMessage message) {
+      writeFrame(message.frame(FRAME_FORMAT));
+    }
+
+    public void sendHeartbeat() {
+      writeFrame(HEARTBEAT_FRAME);
+    }
+
+    private void writeFrame(Buffer buff) {
       if (log.isTraceEnabled()) log.trace("EventSource, sending frame");
       if (!headersWritten) {
         req.response().headers().set("Content-Type", "text/event-stream; charset=UTF-8");
         setNoCacheHeaders(req);
         setJSESSIONID(options, req);
         req.response().setChunked(true);
-        req.response().write("\r\n");
+        writer.write(CRLF);
         headersWritten = true;
       }
-      StringBuilder sb = new StringBuilder();
-      sb.append("data: ");
-      sb.append(body);
-      sb.append("\r\n\r\n");
-      Buffer buff = buffer(sb.toString());
-      req.response().write(buff);
+      writer.write(buff);
       bytesSent += buff.length();
       if (bytesSent >= maxBytesStreaming) {
         if (log.isTraceEnabled()) log.trace("More than maxBytes sent so closing connection");
@@ -92,7 +112,7 @@ class EventSourceTransport extends BaseTransport {
       if (!closed) {
         try {
           session.resetListener();
-          req.response().end();
+          writer.end();
           req.response().close();
         } catch (IllegalStateException e) {
           // Underlying connection might already be closed - that's fine
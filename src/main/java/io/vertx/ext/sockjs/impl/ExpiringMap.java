@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Vertx;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A map whose entries expire a fixed time after they were put, without a timer per entry.<p>
+ * All the entries live for the same time, so they expire in the order they were put: the entries are queued
+ * in that order and a single periodic sweep polls the expired ones from the head of the queue. The sweep only
+ * runs while the map isn't empty. Lookups check the expiry time, so an entry is gone as soon as it expires even
+ * if it hasn't been swept yet, the expiry handler is called when it is swept, or when the key is put again before
+ * that.<p>
+ * Instances of this class are not thread-safe, they must be used on the context that created them.<p>
+ */
+final class ExpiringMap<K, V> {
+
+  private static final long MIN_SWEEP_PERIOD = 10;
+
+  private final Vertx vertx;
+  private final long ttl;
+  private final long sweepPeriod;
+  private final BiConsumer<K, V> expiryHandler;
+  private final Map<K, Entry<K, V>> entries = new HashMap<>();
+  // Entries in expiry order, entries removed or put again are left in the queue and skipped by the sweep
+  private final ArrayDeque<Entry<K, V>> queue = new ArrayDeque<>();
+  private long sweepTimer = -1;
+
+  /**
+   * @param ttl the time in ms an entry lives for
+   * @param expiryHandler called with the entries that have expired, can be null
+   */
+  ExpiringMap(Vertx vertx, long ttl, BiConsumer<K, V> expiryHandler) {
+    this.vertx = vertx;
+    this.ttl = ttl;
+    this.sweepPeriod = Math.max(MIN_SWEEP_PERIOD, ttl / 8);
+    this.expiryHandler = expiryHandler;
+  }
+
+  void put(K key, V value) {
+    put(key, value, System.currentTimeMillis());
+  }
+
+  void put(K key, V value, long now) {
+    Entry<K, V> old = entries.remove(key);
+    if (old != null && old.expired(now) && expiryHandler != null) {
+      // The sweep skips the entries that have been replaced, the expired one must not be replaced silently. It is
+      // handled before the new entry is put as the handler may remove the key
+      expiryHandler.accept(old.key, old.value);
+    }
+    Entry<K, V> entry = new Entry<>(key, value, now + ttl);
+    entries.put(key, entry);
+    queue.add(entry);
+    if (sweepTimer == -1) {
+      sweepTimer = vertx.setPeriodic(sweepPeriod, id -> sweep(System.currentTimeMillis()));
+    }
+  }
+
+  V get(K key) {
+    return get(key, System.currentTimeMillis());
+  }
+
+  V get(K key, long now) {
+    Entry<K, V> entry = entries.get(key);
+    return entry == null || entry.expired(now) ? null : entry.value;
+  }
+
+  boolean containsKey(K key) {
+    return get(key) != null;
+  }
+
+  V remove(K key) {
+    return remove(key, System.currentTimeMillis());
+  }
+
+  V remove(K key, long now) {
+    Entry<K, V> entry = entries.remove(key);
+    return entry == null || entry.expired(now) ? null : entry.value;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  void sweep(long now) {
+    Entry<K, V> entry;
+    while ((entry = queue.peek()) != null && entry.expired(now)) {
+      queue.poll();
+      if (entries.get(entry.key) == entry) {
+        entries.remove(entry.key);
+        if (expiryHandler != null) {
+          expiryHandler.accept(entry.key, entry.value);
+        }
+      }
+    }
+    if (entries.isEmpty() && sweepTimer != -1) {
+      // Entries removed before they expired are still queued
+      queue.clear();
+      vertx.cancelTimer(sweepTimer);
+      sweepTimer = -1;
+    }
+  }
+
+  private static final class Entry<K, V> {
+    final K key;
+    final V value;
+    final long expiresAt;
+
+    Entry(K key, V value, long expiresAt) {
+      this.key = key;
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean expired(long now) {
+      return now >= expiresAt;
+    }
+  }
+}
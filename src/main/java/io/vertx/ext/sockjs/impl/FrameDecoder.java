@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.vertx.core.buffer.Buffer.*;
+
+/**
+ * Decodes the messages sent by SockJS clients, either a JSON array of strings or a single JSON string.<p>
+ * The payload bytes are walked directly, validated and decoded in a single pass, and each message is returned
+ * as a {@link Buffer} holding its UTF-8 bytes, without decoding the payload to a {@code String} or the messages to a {@code String[]}.
+ * A message without escapes is copied as is, otherwise it is unescaped into a new buffer.<p>
+ */
+final class FrameDecoder {
+
+  private FrameDecoder() {
+  }
+
+  /**
+   * Validate and decode the payload in a single pass
+   *
+   * @return the messages of the payload in order, or null if the payload is not valid
+   */
+  static List<Buffer> decodeAll(Buffer payload) {
+    List<Buffer> messages = new ArrayList<>(4);
+    return parse(payload, messages::add) ? messages : null;
+  }
+
+  private static boolean parse(Buffer payload, Handler<Buffer> handler) {
+    int len = payload.length();
+    int pos = skipWhitespace(payload, 0);
+    if (pos == len) {
+      return false;
+    }
+    if (payload.getByte(pos) == '[') {
+      pos = skipWhitespace(payload, pos + 1);
+      if (pos < len && payload.getByte(pos) == ']') {
+        pos++;
+      } else {
+        while (true) {
+          pos = readString(payload, pos, handler);
+          if (pos == -1) {
+            return false;
+          }
+          pos = skipWhitespace(payload, pos);
+          if (pos == len) {
+            return false;
+          }
+          byte b = payload.getByte(pos);
+          if (b == ']') {
+            pos++;
+            break;
+          } else if (b == ',') {
+            pos = skipWhitespace(payload, pos + 1);
+          } else {
+            return false;
+          }
+        }
+      }
+    } else {
+      pos = readString(payload, pos, handler);
+      if (pos == -1) {
+        return false;
+      }
+    }
+    return skipWhitespace(payload, pos) == len;
+  }
+
+  private static int skipWhitespace(Buffer payload, int pos) {
+    int len = payload.length();
+    while (pos < len) {
+      byte b = payload.getByte(pos);
+      if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+        break;
+      }
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * Read the JSON string starting at pos and hand its unescaped value to the handler
+   *
+   * @return the position after the closing quote or -1 if there is no valid string at pos
+   */
+  private static int readString(Buffer payload, int pos, Handler<Buffer> handler) {
+    int len = payload.length();
+    if (pos == len || payload.getByte(pos) != '"') {
+      return -1;
+    }
+    int start = ++pos;
+    // Only created when the string has escapes, holds the unescaped bytes up to start
+    Buffer unescaped = null;
+    while (pos < len) {
+      byte b = payload.getByte(pos);
+      if (b == '"') {
+        if (unescaped == null) {
+          handler.handle(payload.getBuffer(start, pos));
+        } else {
+          handler.handle(unescaped.appendBuffer(payload, start, pos - start));
+        }
+        return pos + 1;
+      } else if (b == '\\') {
+        if (pos + 1 == len) {
+          return -1;
+        }
+        byte escaped = payload.getByte(pos + 1);
+        int next;
+        if (escaped == 'u') {
+          next = pos + 6;
+          if (next > len || hexValue(payload, pos + 2) == -1) {
+            return -1;
+          }
+        } else if (escaped == '"' || escaped == '\\' || escaped == '/' || escaped == 'b' || escaped == 'f' ||
+                   escaped == 'n' || escaped == 'r' || escaped == 't') {
+          next = pos + 2;
+        } else {
+          return -1;
+        }
+        if (unescaped == null) {
+          unescaped = buffer(len - start);
+        }
+        unescaped.appendBuffer(payload, start, pos - start);
+        if (escaped == 'u') {
+          next = appendCodePoint(unescaped, payload, pos);
+        } else {
+          unescaped.appendByte(unescape(escaped));
+        }
+        pos = next;
+        start = next;
+      } else if (b >= 0 && b < 0x20) {
+        // Control characters must be escaped
+        return -1;
+      } else {
+        pos++;
+      }
+    }
+    return -1;
+  }
+
+  private static byte unescape(byte escaped) {
+    switch (escaped) {
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      default:
+        // " \ and /
+        return escaped;
+    }
+  }
+
+  /**
+   * Append the UTF-8 bytes of the unicode escape at pos, a surrogate pair escaped as two consecutive escapes
+   * is combined and a lone surrogate becomes {@code ?}, like it does when a String is encoded to UTF-8.
+   *
+   * @return the position after the escape, or after the second escape of a surrogate pair
+   */
+  private static int appendCodePoint(Buffer out, Buffer payload, int pos) {
+    int c = hexValue(payload, pos + 2);
+    int next = pos + 6;
+    if (Character.isHighSurrogate((char) c) && next + 6 <= payload.length() && payload.getByte(next) == '\\' &&
+        payload.getByte(next + 1) == 'u') {
+      int low = hexValue(payload, next + 2);
+      if (low != -1 && Character.isLowSurrogate((char) low)) {
+        c = Character.toCodePoint((char) c, (char) low);
+        next += 6;
+      }
+    }
+    if (c < 0x80) {
+      out.appendByte((byte) c);
+    } else if (c < 0x800) {
+      out.appendByte((byte) (0xC0 | (c >> 6)));
+      out.appendByte((byte) (0x80 | (c & 0x3F)));
+    } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+      out.appendByte((byte) '?');
+    } else if (c < 0x10000) {
+      out.appendByte((byte) (0xE0 | (c >> 12)));
+      out.appendByte((byte) (0x80 | ((c >> 6) & 0x3F)));
+      out.appendByte((byte) (0x80 | (c & 0x3F)));
+    } else {
+      out.appendByte((byte) (0xF0 | (c >> 18)));
+      out.appendByte((byte) (0x80 | ((c >> 12) & 0x3F)));
+      out.appendByte((byte) (0x80 | ((c >> 6) & 0x3F)));
+      out.appendByte((byte) (0x80 | (c & 0x3F)));
+    }
+    return next;
+  }
+
+  // The value of the 4 hex digits at pos, or -1 if they aren't all hex digits
+  private static int hexValue(Buffer payload, int pos) {
+    int value = 0;
+    for (int i = pos; i < pos + 4; i++) {
+      int digit = Character.digit(payload.getByte(i), 16);
+      if (digit == -1) {
+        return -1;
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import com.fasterxml.jackson.core.io.CharTypes;
+import io.vertx.core.buffer.Buffer;
+
+import static io.vertx.core.buffer.Buffer.*;
+
+/**
+ * Encodes SockJS frames straight into a {@link Buffer}.<p>
+ * Messages are escaped exactly like {@link JsonCodec} does: characters that have a short escape use it,
+ * other control characters and any non ASCII character are unicode escaped. The output is the same as
+ * {@code "a" + JsonCodec.encode(messages)}, without going through an object mapper and an intermediate string.<p>
+ */
+final class FrameEncoder {
+
+  static final Buffer OPEN_FRAME = buffer("o");
+  static final Buffer HEARTBEAT_FRAME = buffer("h");
+  static final Buffer GO_AWAY_FRAME = closeFrame(3000, "Go away!");
+  static final Buffer ANOTHER_CONNECTION_FRAME = closeFrame(2010, "Another connection still open");
+
+  private static final byte[] HEX_CHARS = {
+    '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+  };
+  // Same table as the one JsonCodec uses: 0 means no escaping, -1 a unicode escape, otherwise the short escape
+  private static final int[] ESCAPE_CODES = CharTypes.get7BitOutputEscapes();
+
+  private static final long HIGH_BITS = 0x8080808080808080L;
+  private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+  // Adding 0x60 to a 7 bit value sets its high bit unless the value is below 0x20
+  private static final long CONTROL_LIMIT = 0x6060606060606060L;
+  private static final long QUOTES = 0x2222222222222222L;
+  private static final long BACKSLASHES = 0x5C5C5C5C5C5C5C5CL;
+
+  private FrameEncoder() {
+  }
+
+  static Buffer closeFrame(int code, String msg) {
+    return buffer("c[" + code + ",\"" + msg + "\"]");
+  }
+
+  /**
+   * Writing a buffer to a connection releases it, and frames are shared by many connections: the static frames
+   * and the frames of broadcast messages. They are written from a retained duplicate, which the write releases.
+   */
+  static Buffer writable(Buffer frame) {
+    return buffer(frame.getByteBuf().duplicate().retain());
+  }
+
+  /**
+   * Encode the queued messages as a message frame, {@code a["msg1","msg2",...]}
+   */
+  static Buffer encodeMessages(WriteQueue messages) {
+    int size = messages.size();
+    // Most messages need few escapes, so start from the unescaped size
+    Buffer frame = buffer(messages.bytes() + 3 * size + 2);
+    frame.appendByte((byte) 'a');
+    frame.appendByte((byte) '[');
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        frame.appendByte((byte) ',');
+      }
+      if (messages.isEncoded(i)) {
+        frame.appendBuffer(messages.get(i));
+      } else {
+        appendString(frame, messages.get(i));
+      }
+    }
+    frame.appendByte((byte) ']');
+    return frame;
+  }
+
+  /**
+   * Encode a single message that is already escaped and quoted as a message frame
+   */
+  static Buffer encodeMessage(Buffer element) {
+    return buffer(element.length() + 3).appendByte((byte) 'a').appendByte((byte) '[').appendBuffer(element)
+      .appendByte((byte) ']');
+  }
+
+  /**
+   * Append the UTF-8 message to the frame as a quoted and escaped JSON string
+   */
+  static void appendString(Buffer frame, Buffer msg) {
+    frame.appendByte((byte) '"');
+    int len = msg.length();
+    // Start of the run of bytes that don't need escaping, runs are copied in one go
+    int start = 0;
+    int pos = 0;
+    while (pos < len) {
+      if (pos + 8 <= len) {
+        long mask = escapeMask(msg.getLong(pos));
+        if (mask == 0) {
+          pos += 8;
+          continue;
+        }
+        // Buffers are big endian, the first byte to escape is the most significant flagged one
+        pos += Long.numberOfLeadingZeros(mask) >>> 3;
+      } else if (msg.getByte(pos) >= 0 && ESCAPE_CODES[msg.getByte(pos)] == 0) {
+        pos++;
+        continue;
+      }
+      if (pos > start) {
+        frame.appendBuffer(msg, start, pos - start);
+      }
+      byte b = msg.getByte(pos);
+      if (b >= 0) {
+        int code = ESCAPE_CODES[b];
+        if (code == -1) {
+          appendUnicodeEscape(frame, (char) b);
+        } else {
+          frame.appendByte((byte) '\\');
+          frame.appendByte((byte) code);
+        }
+        pos++;
+      } else {
+        // Every non ASCII character is unicode escaped, decode the whole run to get its UTF-16 chars
+        int end = pos + 1;
+        while (end < len && msg.getByte(end) < 0) {
+          end++;
+        }
+        String run = msg.getString(pos, end);
+        for (int i = 0; i < run.length(); i++) {
+          appendUnicodeEscape(frame, run.charAt(i));
+        }
+        pos = end;
+      }
+      start = pos;
+    }
+    if (pos > start) {
+      frame.appendBuffer(msg, start, pos - start);
+    }
+    frame.appendByte((byte) '"');
+  }
+
+  /**
+   * Look for the bytes that need escaping in 8 bytes at once: non ASCII bytes, control characters, {@code "}
+   * and {@code \}, which are all the bytes the escape table doesn't leave alone. The high bit of each flagged
+   * byte is set in the returned mask, the arithmetic never carries from one byte to the next so the mask is exact.
+   */
+  static long escapeMask(long word) {
+    long quote = word ^ QUOTES;
+    long backslash = word ^ BACKSLASHES;
+    long control = ~((word & LOW_BITS) + CONTROL_LIMIT);
+    long isQuote = ~(((quote & LOW_BITS) + LOW_BITS) | quote);
+    long isBackslash = ~(((backslash & LOW_BITS) + LOW_BITS) | backslash);
+    return (word | control | isQuote | isBackslash) & HIGH_BITS;
+  }
+
+  private static void appendUnicodeEscape(Buffer frame, char c) {
+    frame.appendByte((byte) '\\');
+    frame.appendByte((byte) 'u');
+    frame.appendByte(HEX_CHARS[(c >> 12) & 0xF]);
+    frame.appendByte(HEX_CHARS[(c >> 8) & 0xF]);
+    frame.appendByte(HEX_CHARS[(c >> 4) & 0xF]);
+    frame.appendByte(HEX_CHARS[c & 0xF]);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static io.vertx.core.buffer.Buffer.*;
+
+/**
+ * Encodes the body of a streaming response as a single gzip member, written piece by piece.<p>
+ * Each piece is flushed with {@link Deflater#SYNC_FLUSH}, so the client can inflate a frame as soon as its chunk
+ * arrives. The first pieces can also be written as stored blocks, left uncompressed, for the preludes that must
+ * keep their size on the wire.<p>
+ * The deflater holds native memory until {@link #finish} or {@link #release} is called.<p>
+ */
+final class GzipEncoder {
+
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+  private static final int MAX_STORED_BLOCK = 0xFFFF;
+
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+  private final CRC32 crc = new CRC32();
+  private final byte[] out = new byte[4096];
+  private boolean headerWritten;
+  private int size;
+
+  /**
+   * @return the piece compressed and flushed
+   */
+  Buffer compress(Buffer piece) {
+    byte[] bytes = piece.getBytes();
+    update(bytes);
+    Buffer result = start(bytes.length / 2 + 16);
+    deflater.setInput(bytes);
+    int n;
+    do {
+      n = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+      result.appendBytes(out, 0, n);
+    } while (n == out.length);
+    return result;
+  }
+
+  /**
+   * @return the piece as stored blocks, it must be written before anything is compressed since the deflater
+   * back-references don't account for the stored bytes
+   */
+  Buffer store(Buffer piece) {
+    if (deflater.getBytesRead() > 0) {
+      throw new IllegalStateException("Data has already been compressed");
+    }
+    byte[] bytes = piece.getBytes();
+    update(bytes);
+    Buffer result = start(bytes.length + 5 * (bytes.length / MAX_STORED_BLOCK + 1));
+    int pos = 0;
+    do {
+      int len = Math.min(bytes.length - pos, MAX_STORED_BLOCK);
+      // Block header without the final bit, then LEN and NLEN little endian
+      result.appendByte((byte) 0)
+        .appendByte((byte) len).appendByte((byte) (len >>> 8))
+        .appendByte((byte) ~len).appendByte((byte) (~len >>> 8))
+        .appendBytes(bytes, pos, len);
+      pos += len;
+    } while (pos < bytes.length);
+    return result;
+  }
+
+  /**
+   * @return the end of the gzip member, the deflater is released
+   */
+  Buffer finish() {
+    Buffer result = start(32);
+    deflater.finish();
+    while (!deflater.finished()) {
+      int n = deflater.deflate(out);
+      result.appendBytes(out, 0, n);
+    }
+    deflater.end();
+    result.appendInt(Integer.reverseBytes((int) crc.getValue())).appendInt(Integer.reverseBytes(size));
+    return result;
+  }
+
+  /**
+   * Release the deflater without finishing the member, when the connection is gone
+   */
+  void release() {
+    deflater.end();
+  }
+
+  private Buffer start(int sizeHint) {
+    Buffer result;
+    if (!headerWritten) {
+      result = buffer(HEADER.length + sizeHint).appendBytes(HEADER);
+      headerWritten = true;
+    } else {
+      result = buffer(sizeHint);
+    }
+    return result;
+  }
+
+  // Keeps the CRC and the size of the uncompressed data for the trailer
+  private void update(byte[] bytes) {
+    crc.update(bytes, 0, bytes.length);
+    size += bytes.length;
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Sends the heartbeats of all the sessions of a context that share the same heartbeat period.<p>
+ * A single {@link TimerWheel.Timeout} walks the sessions every half period instead of each session scheduling
+ * its own heartbeat. A session only gets a heartbeat once it has sent nothing, heartbeats included, for a full
+ * period: an idle session gets one heartbeat per period and a session that keeps writing gets none. No session
+ * stays silent for more than one and a half periods.<p>
+ * The sessions are those of the context of the sweep, it runs on that context and sends their heartbeats
+ * directly.<p>
+ */
+class HeartbeatSweep {
+
+  private final TimerWheel timers;
+  private final long period;
+  private final long interval;
+  private final Set<Session> sessions = new HashSet<>();
+  private final TimerWheel.Timeout sweep = new TimerWheel.Timeout(v -> sweep());
+
+  HeartbeatSweep(TimerWheel timers, long period) {
+    this.timers = timers;
+    this.period = period;
+    this.interval = Math.max(1, period / 2);
+  }
+
+  void add(Session session) {
+    if (sessions.add(session) && sessions.size() == 1) {
+      timers.schedule(sweep, interval);
+    }
+  }
+
+  void remove(Session session) {
+    if (sessions.remove(session) && sessions.isEmpty()) {
+      timers.cancel(sweep);
+    }
+  }
+
+  private void sweep() {
+    if (sessions.isEmpty()) {
+      return;
+    }
+    // Sending a heartbeat can end up closing a session so we don't walk the set itself
+    Session[] toVisit = sessions.toArray(new Session[sessions.size()]);
+    timers.schedule(sweep, interval);
+    long now = System.currentTimeMillis();
+    for (Session session : toVisit) {
+      session.sendHeartbeat(now, period);
+    }
+  }
+}
@@ -27,6 +27,8 @@ import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.sockjs.SockJSServerOptions;
 import io.vertx.ext.sockjs.SockJSSocket;
 
+import java.util.function.Function;
+
 import static io.vertx.core.buffer.Buffer.*;
 
 /**
@@ -36,7 +38,8 @@ class HtmlFileTransport extends BaseTransport {
 
   private static final Logger log = LoggerFactory.getLogger(HtmlFileTransport.class);
 
-  private static final String HTML_FILE_TEMPLATE;
+  private static final Buffer HTML_FILE_PREFIX;
+  private static final Buffer HTML_FILE_SUFFIX;
 
   static {
     String str =
@@ -53,6 +56,7 @@ class HtmlFileTransport extends BaseTransport {
     "    window.onload = function() {c.stop();};\n" +
     "  </script>";
 
+    // The padding doesn't depend on the callback, so the page is split around it once
     String str2 = str.replace("{{ callback }}", "");
     StringBuilder sb = new StringBuilder(str);
     int extra = 1024 - str2.length();
@@ -60,15 +64,24 @@ class HtmlFileTransport extends BaseTransport {
       sb.append(' ');
     }
     sb.append("\r\n");
-    HTML_FILE_TEMPLATE = sb.toString();
+    String template = sb.toString();
+    int callbackPos = template.indexOf("{{ callback }}");
+    HTML_FILE_PREFIX = buffer(template.substring(0, callbackPos));
+    HTML_FILE_SUFFIX = buffer(template.substring(callbackPos + "{{ callback }}".length()));
   }
 
-  HtmlFileTransport(Vertx vertx, RouteMatcher rm, String basePath, LocalMap<String, Session> sessions, SockJSServerOptions options,
-                    Handler<SockJSSocket> sockHandler) {
-    super(vertx, sessions, options);
-    String htmlFileRE = basePath + COMMON_PATH_ELEMENT_RE + "htmlfile";
+  private static final Buffer SCRIPT_PREFIX = buffer("<script>\np(\"");
+  private static final Buffer SCRIPT_SUFFIX = buffer("\");\n</script>\r\n");
+  private static final Function<Buffer, Buffer> FRAME_FORMAT = frame -> {
+    Buffer body = buffer(escapeForJavaScript(frame.toString()));
+    return buffer(body.length() + SCRIPT_PREFIX.length() + SCRIPT_SUFFIX.length())
+      .appendBuffer(SCRIPT_PREFIX).appendBuffer(body).appendBuffer(SCRIPT_SUFFIX);
+  };
 
-    rm.matchMethodWithRegEx(HttpMethod.GET, htmlFileRE, req -> {
+  HtmlFileTransport(Vertx vertx, TransportDispatcher dispatcher, String basePath, LocalMap<String, Session> sessions,
+                    SockJSServerOptions options, Handler<SockJSSocket> sockHandler) {
+    super(vertx, sessions, options);
+    dispatcher.route(basePath, "htmlfile", HttpMethod.GET, req -> {
       if (log.isTraceEnabled()) log.trace("HtmlFile, get: " + req.uri());
       String callback = req.params().get("callback");
       if (callback == null) {
@@ -81,7 +94,7 @@ class HtmlFileTransport extends BaseTransport {
       }
 
       String sessionID = req.params().get("param0");
-      Session session = getSession(options.getSessionTimeout(), options.getHeartbeatPeriod(), sessionID, sockHandler);
+      Session session = getSession(options.getSessionTimeout(), sessionID, sockHandler);
       session.setInfo(req.localAddress(), req.remoteAddress(), req.uri(), req.headers());
       session.register(new HtmlFileListener(options.getMaxBytesStreaming(), req, callback, session));
     });
@@ -91,35 +104,39 @@ class HtmlFileTransport extends BaseTransport {
 
     final int maxBytesStreaming;
     final String callback;
+    final ChunkedWriter writer;
     boolean headersWritten;
     int bytesSent;
-    boolean closed;
 
     HtmlFileListener(int maxBytesStreaming, HttpServerRequest req, String callback, Session session) {
       super(req, session);
       this.maxBytesStreaming = maxBytesStreaming;
       this.callback = callback;
+      this.writer = new ChunkedWriter(vertx, req.response(), options.getStreamingFlushDelay(), null);
       addCloseHandler(req.response(), session);
     }
 
-    public void sendFrame(String body) {
+    public void sendFrame(Buffer frame) {
+      writeFrame(FRAME_FORMAT.apply(frame));
+    }
+
+    public void sendFrame(EncodedMessage message) {
+      writeFrame(message.frame(FRAME_FORMAT));
+    }
+
+    private void writeFrame(Buffer buff) {
       if (log.isTraceEnabled()) log.trace("HtmlFile, sending frame");
       if (!headersWritten) {
-        String htmlFile = HTML_FILE_TEMPLATE.replace("{{ callback }}", callback);
         req.response().headers().set("Content-Type", "text/html; charset=UTF-8");
         setNoCacheHeaders(req);
         req.response().setChunked(true);
         setJSESSIONID(options, req);
-        req.response().end(htmlFile);
+        Buffer htmlFile = buffer(HTML_FILE_PREFIX.length() + callback.length() + HTML_FILE_SUFFIX.length())
+          .appendBuffer(HTML_FILE_PREFIX).appendString(callback).appendBuffer(HTML_FILE_SUFFIX);
+        writer.write(htmlFile);
         headersWritten = true;
       }
-      body = escapeForJavaScript(body);
-      StringBuilder sb = new StringBuilder();
-      sb.append("<script>\np(\"");
-      sb.append(body);
-      sb.append("\");\n</script>\r\n");
-      Buffer buff = buffer(sb.toString());
-      req.response().end(buff);
+      writer.write(buff);
       bytesSent += buff.length();
       if (bytesSent >= maxBytesStreaming) {
         if (log.isTraceEnabled()) log.trace("More than maxBytes sent so closing connection");
@@ -132,7 +149,7 @@ class HtmlFileTransport extends BaseTransport {
       if (!closed) {
         try {
           session.resetListener();
-          req.response().end();
+          writer.end();
           req.response().close();
           closed = true;
         } catch (IllegalStateException e) {
@@ -60,12 +60,10 @@ public class JsonCodec {
       final int[] ESCAPE_CODES = CharTypes.get7BitOutputEscapes();
 
       private void writeUnicodeEscape(JsonGenerator gen, char c) throws IOException {
-        gen.writeRaw('\\');
-        gen.writeRaw('u');
-        gen.writeRaw(HEX_CHARS[(c >> 12) & 0xF]);
-        gen.writeRaw(HEX_CHARS[(c >> 8) & 0xF]);
-        gen.writeRaw(HEX_CHARS[(c >> 4) & 0xF]);
-        gen.writeRaw(HEX_CHARS[c & 0xF]);
+        char[] escape = {
+          '\\', 'u', HEX_CHARS[(c >> 12) & 0xF], HEX_CHARS[(c >> 8) & 0xF], HEX_CHARS[(c >> 4) & 0xF], HEX_CHARS[c & 0xF]
+        };
+        gen.writeRaw(escape, 0, escape.length);
       }
 
       private void writeShortEscape(JsonGenerator gen, char c) throws IOException {
@@ -87,16 +85,25 @@ public class JsonCodec {
             throw new JsonGenerationException("Can not write string value here");
         }
         gen.writeRaw('"');
-        for (char c : str.toCharArray()) {
-          if (c >= 0x80) writeUnicodeEscape(gen, c); // use generic escaping for all non US-ASCII characters
-          else {
-            // use escape table for first 128 characters
-            int code = (c < ESCAPE_CODES.length ? ESCAPE_CODES[c] : 0);
-            if (code == 0) gen.writeRaw(c); // no escaping
-            else if (code == -1) writeUnicodeEscape(gen, c); // generic escaping
+        // Characters that don't need escaping are written in runs, most strings are written in one go
+        int len = str.length();
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+          char c = str.charAt(i);
+          // use escape table for first 128 characters
+          int code = (c < 0x80 ? ESCAPE_CODES[c] : -1);
+          if (code != 0) {
+            if (i > start) {
+              gen.writeRaw(str, start, i - start);
+            }
+            start = i + 1;
+            if (code == -1) writeUnicodeEscape(gen, c); // generic escaping, for all non US-ASCII characters too
             else writeShortEscape(gen, (char) code); // short escaping (\n \t ...)
           }
         }
+        if (len > start) {
+          gen.writeRaw(str, start, len - start);
+        }
         gen.writeRaw('"');
       }
     });
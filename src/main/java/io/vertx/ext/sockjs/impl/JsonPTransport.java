@@ -18,6 +18,7 @@ package io.vertx.ext.sockjs.impl;
 
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.logging.Logger;
@@ -29,6 +30,8 @@ import io.vertx.ext.sockjs.SockJSSocket;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 
+import static io.vertx.core.buffer.Buffer.*;
+
 /**
  * @author <a href="http://tfox.org">Tim Fox</a>
  */
@@ -36,13 +39,11 @@ class JsonPTransport extends BaseTransport {
 
   private static final Logger log = LoggerFactory.getLogger(JsonPTransport.class);
 
-  JsonPTransport(Vertx vertx, RouteMatcher rm, String basePath, LocalMap<String, Session> sessions, SockJSServerOptions options,
-                 Handler<SockJSSocket> sockHandler) {
+  JsonPTransport(Vertx vertx, TransportDispatcher dispatcher, String basePath, LocalMap<String, Session> sessions,
+                 SockJSServerOptions options, Handler<SockJSSocket> sockHandler) {
     super(vertx, sessions, options);
 
-    String jsonpRE = basePath + COMMON_PATH_ELEMENT_RE + "jsonp";
-
-    rm.matchMethodWithRegEx(HttpMethod.GET, jsonpRE, req -> {
+    dispatcher.route(basePath, "jsonp", HttpMethod.GET, req -> {
       if (log.isTraceEnabled()) log.trace("JsonP, get: " + req.uri());
       String callback = req.params().get("callback");
       if (callback == null) {
@@ -55,14 +56,12 @@ class JsonPTransport extends BaseTransport {
       }
 
       String sessionID = req.params().get("param0");
-      Session session = getSession(options.getSessionTimeout(), options.getHeartbeatPeriod(), sessionID, sockHandler);
+      Session session = getSession(options.getSessionTimeout(), sessionID, sockHandler);
       session.setInfo(req.localAddress(), req.remoteAddress(), req.uri(), req.headers());
       session.register(new JsonPListener(req, session, callback));
     });
 
-    String jsonpSendRE = basePath + COMMON_PATH_ELEMENT_RE + "jsonp_send";
-
-    rm.matchMethodWithRegEx(HttpMethod.POST, jsonpSendRE, req -> {
+    dispatcher.route(basePath, "jsonp_send", HttpMethod.POST, req -> {
       if (log.isTraceEnabled()) log.trace("JsonP, post: " + req.uri());
       String sessionID = req.params().get("param0");
       final Session session = sessions.get(sessionID);
@@ -104,10 +103,10 @@ class JsonPTransport extends BaseTransport {
         } catch (UnsupportedEncodingException e) {
           throw new IllegalStateException("No UTF-8!");
         }
-        body = body.substring(2);
+        buff = buffer(body.substring(2));
       }
 
-      if (!session.handleMessages(body)) {
+      if (!session.handleMessages(buff)) {
         sendInvalidJSON(req.response());
       } else {
         setJSESSIONID(options, req);
@@ -123,7 +122,6 @@ class JsonPTransport extends BaseTransport {
 
     final String callback;
     boolean headersWritten;
-    boolean closed;
 
     JsonPListener(HttpServerRequest req, Session session, String callback) {
       super(req, session);
@@ -132,38 +130,47 @@ class JsonPTransport extends BaseTransport {
     }
 
 
-    public void sendFrame(String body) {
+    public void sendFrame(Buffer frame) {
 
       if (log.isTraceEnabled()) log.trace("JsonP, sending frame");
 
       if (!headersWritten) {
-        req.response().setChunked(true);
         req.response().headers().set("Content-Type", "application/javascript; charset=UTF-8");
         setNoCacheHeaders(req);
         setJSESSIONID(options, req);
         headersWritten = true;
       }
 
-      body = escapeForJavaScript(body);
+      String body = escapeForJavaScript(frame.toString());
 
       StringBuilder sb = new StringBuilder();
       sb.append(callback).append("(\"");
       sb.append(body);
       sb.append("\");\r\n");
 
-      //End the response and close the HTTP connection
+      //End the response with a Content-Length, the HTTP connection is kept for the next request
 
-      req.response().write(sb.toString());
-      close();
+      end(buffer(sb.toString()));
+    }
+
+    public boolean isPolling() {
+      return true;
     }
 
     public void close() {
+      end(null);
+    }
+
+    private void end(Buffer body) {
       if (!closed) {
         try {
           session.resetListener();
-          req.response().end();
-          req.response().close();
           closed = true;
+          if (body == null) {
+            req.response().end();
+          } else {
+            req.response().end(body);
+          }
         } catch (IllegalStateException e) {
           // Underlying connection might already be closed - that's fine
         }
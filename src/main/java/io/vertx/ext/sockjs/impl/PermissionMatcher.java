@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * The permitted rules of a bridge direction, compiled so a message is checked without walking all of them.<p>
+ * Rules keep their order, the first rule matching both the address and the body wins. The rules with an
+ * {@code address} are indexed by address, the {@code address_re} patterns are compiled once and indexed by the
+ * literal text they start with, so only the patterns whose literal prefix the address starts with are tried, and
+ * the {@code match} structures are turned into field predicates so the rule objects are not read again. A pattern
+ * that doesn't start with literal text, such as {@code .*\.news}, is indexed by the empty prefix and always
+ * tried.<p>
+ * When the decision for an address doesn't depend on the body, because no rule with a {@code match} structure
+ * permits that address before the deciding rule, it is kept in a bounded cache and the rules aren't walked
+ * again for that address. The cache is a concurrent map, so the event loops checking messages don't contend on
+ * a lock, and it is emptied when it is full: evicting single decisions from a concurrent map costs a scan of
+ * its table each time.<p>
+ * The rules stay live: when they are the {@link PermittedRules} of the bridge options, a change to the list is
+ * noticed by the next message checked, the rules are compiled again and the cached decisions are dropped with the
+ * rules they were made for. A rule object changed in place is only noticed once it is set again in the list. Rules
+ * in any other list are compiled once. Instances of this class can be used from any thread.<p>
+ */
+final class PermissionMatcher {
+
+  static final Match NO_MATCH = new Match(false, false);
+  static final Match MATCH = new Match(true, false);
+  static final Match MATCH_REQUIRES_AUTH = new Match(true, true);
+
+  private static final int[] NONE = new int[0];
+  private static final int DECISION_CACHE_SIZE = 1024;
+
+  private final List<JsonObject> permitted;
+  private volatile CompiledRules compiled;
+
+  PermissionMatcher(List<JsonObject> permitted) {
+    this.permitted = permitted;
+    this.compiled = compileRules(permitted);
+  }
+
+  /**
+   * @return the match of the first rule permitting the address and the body
+   */
+  Match match(String address, Object body) {
+    CompiledRules rules = compiled;
+    if (rules.version != version(permitted)) {
+      rules = compileRules(permitted);
+      compiled = rules;
+    }
+    return rules.match(address, body);
+  }
+
+  private static CompiledRules compileRules(List<JsonObject> permitted) {
+    // The version is read first, a change made while the rules are copied is noticed by the next message
+    int version = version(permitted);
+    return new CompiledRules(permitted.toArray(new JsonObject[permitted.size()]), version);
+  }
+
+  private static int version(List<JsonObject> permitted) {
+    return permitted instanceof PermittedRules ? ((PermittedRules) permitted).version() : 0;
+  }
+
+  // The rules as they were when compiled, with the decisions cached for them
+  private static final class CompiledRules {
+
+    final int version;
+    private final Rule[] rules;
+    private final Map<String, int[]> byAddress;
+    private final int[] anyAddress;
+    private final Map<String, int[]> byPrefix;
+    // The lengths of the prefixes in byPrefix, in increasing order
+    private final int[] prefixLengths;
+    private final ConcurrentMap<String, Match> decisions = new ConcurrentHashMap<>();
+
+    CompiledRules(JsonObject[] permitted, int version) {
+      this.version = version;
+      rules = new Rule[permitted.length];
+      Map<String, List<Integer>> addresses = new HashMap<>();
+      List<Integer> any = new ArrayList<>();
+      Map<String, List<Integer>> prefixes = new HashMap<>();
+      for (int i = 0; i < rules.length; i++) {
+        JsonObject json = permitted[i];
+        String address = json.getString("address");
+        String regex = address == null ? json.getString("address_re") : null;
+        Boolean requiresAuth = json.getBoolean("requires_auth");
+        rules[i] = new Rule(regex == null ? null : Pattern.compile(regex), compile(json.getJsonObject("match")),
+          requiresAuth != null && requiresAuth ? MATCH_REQUIRES_AUTH : MATCH);
+        if (address != null) {
+          addresses.computeIfAbsent(address, a -> new ArrayList<>()).add(i);
+        } else if (regex != null) {
+          prefixes.computeIfAbsent(literalPrefix(regex), p -> new ArrayList<>()).add(i);
+        } else {
+          any.add(i);
+        }
+      }
+      byAddress = new HashMap<>();
+      addresses.forEach((address, indexes) -> byAddress.put(address, toArray(indexes)));
+      anyAddress = toArray(any);
+      byPrefix = new HashMap<>();
+      prefixes.forEach((prefix, indexes) -> byPrefix.put(prefix, toArray(indexes)));
+      prefixLengths = prefixes.keySet().stream().mapToInt(String::length).distinct().sorted().toArray();
+    }
+
+    Match match(String address, Object body) {
+      Match match = decisions.get(address);
+      if (match == null) {
+        match = evaluate(address, body);
+      }
+      return match;
+    }
+
+    private Match evaluate(String address, Object body) {
+      // Set once a rule with a structure permits the address, from then on the decision depends on the body
+      boolean bodyDependent = false;
+      Match match = NO_MATCH;
+      int[] exact = byAddress.getOrDefault(address, NONE);
+      int[] regex = patternsFor(address);
+      // Walk the three lists in rule order
+      int e = 0, a = 0, r = 0;
+      while (true) {
+        int next = Integer.MAX_VALUE;
+        int list = -1;
+        if (e < exact.length && exact[e] < next) {
+          next = exact[e];
+          list = 0;
+        }
+        if (a < anyAddress.length && anyAddress[a] < next) {
+          next = anyAddress[a];
+          list = 1;
+        }
+        if (r < regex.length && regex[r] < next) {
+          next = regex[r];
+          list = 2;
+        }
+        if (list == -1) {
+          break;
+        }
+        Rule rule = rules[next];
+        if (list == 0) {
+          e++;
+        } else if (list == 1) {
+          a++;
+        } else {
+          r++;
+          if (!rule.pattern.matcher(address).matches()) {
+            continue;
+          }
+        }
+        if (rule.structure == null) {
+          match = rule.match;
+          break;
+        }
+        bodyDependent = true;
+        if (rule.structure.matches(body)) {
+          match = rule.match;
+          break;
+        }
+      }
+      if (!bodyDependent) {
+        if (decisions.size() >= DECISION_CACHE_SIZE) {
+          decisions.clear();
+        }
+        decisions.put(address, match);
+      }
+      return match;
+    }
+
+    // The patterns whose literal prefix the address starts with, in rule order
+    private int[] patternsFor(String address) {
+      int[] patterns = NONE;
+      for (int length : prefixLengths) {
+        if (length > address.length()) {
+          break;
+        }
+        int[] indexes = byPrefix.get(length == address.length() ? address : address.substring(0, length));
+        if (indexes != null) {
+          patterns = patterns.length == 0 ? indexes : merge(patterns, indexes);
+        }
+      }
+      return patterns;
+    }
+  }
+
+  private static int[] merge(int[] a, int[] b) {
+    int[] merged = new int[a.length + b.length];
+    int i = 0, j = 0, k = 0;
+    while (i < a.length || j < b.length) {
+      merged[k++] = j == b.length || (i < a.length && a[i] < b[j]) ? a[i++] : b[j++];
+    }
+    return merged;
+  }
+
+  /**
+   * @return the text every address matching the pattern starts with, empty when the pattern doesn't start with
+   * literal text
+   */
+  static String literalPrefix(String regex) {
+    if (hasTopLevelAlternation(regex)) {
+      return "";
+    }
+    StringBuilder prefix = new StringBuilder();
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (Character.isSurrogate(c)) {
+        // A quantifier after it would apply to both halves
+        break;
+      } else if (c == '\\') {
+        // An escaped letter or digit is a class, a back reference or a quote, anything else is literal
+        if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+          break;
+        }
+        c = regex.charAt(++i);
+      } else if (".[](){}*+?^$|".indexOf(c) >= 0) {
+        break;
+      }
+      char next = i + 1 < regex.length() ? regex.charAt(i + 1) : 0;
+      if (next == '?' || next == '*' || next == '{') {
+        // The character is optional or repeated an unknown number of times
+        break;
+      }
+      prefix.append(c);
+      if (next == '+') {
+        break;
+      }
+    }
+    return prefix.toString();
+  }
+
+  // An alternation outside any group, like a|b, lets an address match without the prefix of the first alternative
+  private static boolean hasTopLevelAlternation(String regex) {
+    int depth = 0;
+    boolean inClass = false;
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (inClass) {
+        inClass = c != ']';
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == '|' && depth == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  private static Structure compile(JsonObject match) {
+    if (match == null) {
+      return null;
+    }
+    List<String> fields = new ArrayList<>(match.fieldNames());
+    String[] names = fields.toArray(new String[fields.size()]);
+    Object[] values = new Object[names.length];
+    for (int i = 0; i < names.length; i++) {
+      Object value = match.getValue(names[i]);
+      // Support deep matching
+      values[i] = value instanceof JsonObject ? compile((JsonObject) value) : value;
+    }
+    return new Structure(names, values);
+  }
+
+  static final class Match {
+    public final boolean doesMatch;
+    public final boolean requiresAuth;
+
+    private Match(boolean doesMatch, boolean requiresAuth) {
+      this.doesMatch = doesMatch;
+      this.requiresAuth = requiresAuth;
+    }
+  }
+
+  private static final class Rule {
+    final Pattern pattern;
+    final Structure structure;
+    final Match match;
+
+    Rule(Pattern pattern, Structure structure, Match match) {
+      this.pattern = pattern;
+      this.structure = structure;
+      this.match = match;
+    }
+  }
+
+  // The fields a JSON body must have, a value is either the expected value or the structure of a nested object
+  private static final class Structure {
+    final String[] names;
+    final Object[] values;
+
+    Structure(String[] names, Object[] values) {
+      this.names = names;
+      this.values = values;
+    }
+
+    // Can send message other than JSON too - in which case we can't do deep matching on structure of message
+    boolean matches(Object bodyObject) {
+      if (!(bodyObject instanceof JsonObject)) {
+        return false;
+      }
+      JsonObject body = (JsonObject) bodyObject;
+      for (int i = 0; i < names.length; i++) {
+        Object expected = values[i];
+        Object actual = body.getValue(names[i]);
+        if (expected instanceof Structure) {
+          if (!((Structure) expected).matches(actual)) {
+            return false;
+          }
+        } else if (!Objects.equals(expected, actual)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+
+/**
+ * The permitted rules of a bridge direction, as held by the bridge options.<p>
+ * The list counts its modifications, so a {@link PermissionMatcher} compiled from it can tell that it changed
+ * and compile it again. Replacing a rule counts as a modification too, unlike in an {@link ArrayList}.<p>
+ */
+public class PermittedRules extends ArrayList<JsonObject> {
+
+  @Override
+  public JsonObject set(int index, JsonObject rule) {
+    JsonObject previous = super.set(index, rule);
+    modCount++;
+    return previous;
+  }
+
+  int version() {
+    return modCount;
+  }
+}
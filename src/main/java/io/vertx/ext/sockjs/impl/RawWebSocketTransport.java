@@ -22,11 +22,14 @@ import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.WebSocketFrame;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.impl.LoggerFactory;
 import io.vertx.core.net.SocketAddress;
 import io.vertx.ext.sockjs.SockJSSocket;
 
+import static io.vertx.core.buffer.Buffer.*;
+
 /**
  * @author <a href="http://tfox.org">Tim Fox</a>
  */
@@ -38,10 +41,15 @@ class RawWebSocketTransport {
 
     ServerWebSocket ws;
     MultiMap headers;
+    final boolean binary;
+    final int maxMessageSize;
+    Buffer fragments;
 
-    RawWSSockJSSocket(Vertx vertx, ServerWebSocket ws) {
+    RawWSSockJSSocket(Vertx vertx, ServerWebSocket ws, boolean binary, int maxMessageSize) {
       super(vertx);
       this.ws = ws;
+      this.binary = binary;
+      this.maxMessageSize = maxMessageSize;
       ws.closeHandler(v -> {
         // Make sure the writeHandler gets unregistered
         RawWSSockJSSocket.super.close();
@@ -49,10 +57,40 @@ class RawWebSocketTransport {
     }
 
     public SockJSSocket handler(Handler<Buffer> handler) {
-      ws.handler(handler);
+      if (binary) {
+        ws.frameHandler(handler == null ? null : frame -> handleFrame(frame.binaryData(), frame.isFinal(), handler));
+      } else {
+        ws.handler(handler);
+      }
       return this;
     }
 
+    // Messages are handed over once their last frame arrives, a single frame message isn't copied.
+    // A single frame is bounded by the HTTP server, a reassembled message by maxMessageSize
+    private void handleFrame(Buffer data, boolean last, Handler<Buffer> handler) {
+      int reassembled = fragments == null ? (last ? 0 : data.length()) : fragments.length() + data.length();
+      if (reassembled > maxMessageSize) {
+        log.error("Closing raw websocket as a message is larger than rawWebSocketMaxMessageSize");
+        fragments = null;
+        close();
+        return;
+      }
+      if (fragments == null) {
+        if (last) {
+          handler.handle(data);
+        } else {
+          fragments = buffer(data.length() * 2).appendBuffer(data);
+        }
+      } else {
+        fragments.appendBuffer(data);
+        if (last) {
+          Buffer message = fragments;
+          fragments = null;
+          handler.handle(message);
+        }
+      }
+    }
+
     public SockJSSocket pause() {
       ws.pause();
       return this;
@@ -64,7 +102,13 @@ class RawWebSocketTransport {
     }
 
     public SockJSSocket write(Buffer data) {
-      ws.write(data);
+      // Like a broadcast message, the buffer can be written to other sockets too
+      Buffer frame = FrameEncoder.writable(data);
+      if (binary) {
+        ws.writeFrame(WebSocketFrame.binaryFrame(frame, true));
+      } else {
+        ws.write(frame);
+      }
       return this;
     }
 
@@ -122,12 +166,12 @@ class RawWebSocketTransport {
   }
 
   RawWebSocketTransport(Vertx vertx, WebSocketMatcher wsMatcher, RouteMatcher rm, String basePath,
-                        Handler<SockJSSocket> sockHandler) {
+                        boolean binary, int maxMessageSize, Handler<SockJSSocket> sockHandler) {
 
     String wsRE = basePath + "/websocket";
 
-    wsMatcher.addRegEx(wsRE, match -> {
-      SockJSSocket sock = new RawWSSockJSSocket(vertx, match.ws);
+    wsMatcher.addPath(wsRE, match -> {
+      SockJSSocket sock = new RawWSSockJSSocket(vertx, match.ws, binary, maxMessageSize);
       sockHandler.handle(sock);
     });
 
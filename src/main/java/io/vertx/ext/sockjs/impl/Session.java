@@ -20,7 +20,6 @@ import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.json.DecodeException;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.impl.LoggerFactory;
 import io.vertx.core.net.SocketAddress;
@@ -29,16 +28,20 @@ import io.vertx.core.shareddata.Shareable;
 import io.vertx.ext.sockjs.SockJSSocket;
 
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
-
-import static io.vertx.core.buffer.Buffer.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The SockJS session implementation.
  *
  * If multiple instances of the SockJS server are used then instances of this
- * class can be accessed by different threads (not concurrently), so we store
- * it in a shared data map
+ * class can be accessed by different threads, so we store it in a shared data map.
+ * A session is confined to the context that created it: calls made from any other
+ * thread are handed over to that context through a lock-free task queue, so the
+ * session state is never accessed concurrently and doesn't need to be locked.
  *
  * @author <a href="http://tfox.org">Tim Fox</a>
  */
@@ -46,20 +49,36 @@ class Session extends SockJSSocketBase implements Shareable {
 
   private static final Logger log = LoggerFactory.getLogger(Session.class);
   private final LocalMap<String, Session> sessions;
-  private final Queue<String> pendingWrites = new LinkedList<>();
-  private final Queue<String> pendingReads = new LinkedList<>();
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean tasksScheduled = new AtomicBoolean();
+  private final WriteQueue pendingWrites = new WriteQueue();
+  // Bytes written from other threads that are still queued as tasks, they count towards the write queue size
+  private final AtomicInteger handedOffBytes = new AtomicInteger();
+  private final Queue<Buffer> pendingReads = new LinkedList<>();
   private TransportListener listener;
   private Handler<Buffer> dataHandler;
-  private boolean closed;
+  private volatile boolean closed;
   private boolean openWritten;
   private final String id;
   private final long timeout;
   private final Handler<SockJSSocket> sockHandler;
-  private long heartbeatID = -1;
-  private long timeoutTimerID = -1;
+  private final TimerWheel timers;
+  private final HeartbeatSweep heartbeats;
+  private final TimerWheel.Timeout timeoutTimer;
+  // Messages written while a polling listener is registered are held that long, so a burst ends up in one response
+  private final long pollHoldWindow;
+  // The hold window is a few milliseconds, it's scheduled on the millisecond wheel of the context
+  private final TimerWheel pollHoldTimers;
+  private final TimerWheel.Timeout pollHoldTimer;
+  private boolean pollHoldScheduled;
+  // When the last frame was sent, heartbeats included
+  private long lastFrameTime;
+  // When the session last had a listener, MAX_VALUE while it has one - read by the bridge from any thread
+  private volatile long lastConnectedTime = System.currentTimeMillis();
   private boolean paused;
-  private int maxQueueSize = 64 * 1024; // Message queue size is measured in *characters* (not bytes)
-  private int messagesSize;
+  // The write queue is full above the high watermark, the drain handler is called once it is back below the low watermark
+  private volatile int highWatermark = 64 * 1024;
+  private volatile int lowWatermark = highWatermark / 2;
   private Handler<Void> drainHandler;
   private Handler<Void> endHandler;
   private Handler<Throwable> exceptionHandler;
@@ -71,110 +90,178 @@ class Session extends SockJSSocketBase implements Shareable {
 
   Session(Vertx vertx, LocalMap<String, Session> sessions, long heartbeatPeriod,
           Handler<SockJSSocket> sockHandler) {
-    this(vertx, sessions, null, -1, heartbeatPeriod, sockHandler);
+    this(vertx, sessions, null, -1, heartbeatPeriod, 0, sockHandler);
   }
 
   Session(Vertx vertx, LocalMap<String, Session> sessions, String id, long timeout, long heartbeatPeriod,
-          Handler<SockJSSocket> sockHandler) {
+          long pollHoldWindow, Handler<SockJSSocket> sockHandler) {
     super(vertx);
     this.sessions = sessions;
     this.id = id;
     this.timeout = timeout;
+    this.pollHoldWindow = pollHoldWindow;
     this.sockHandler = sockHandler;
+    // The session timers are those of its context, they are only used on that context
+    ContextTimers contextTimers = ContextTimers.forContext(vertx, context);
+    this.timers = contextTimers.wheel();
+    this.pollHoldTimers = contextTimers.fineWheel();
+    this.heartbeats = contextTimers.heartbeats(heartbeatPeriod);
+    this.timeoutTimer = new TimerWheel.Timeout(v -> handleTimeout());
+    this.pollHoldTimer = new TimerWheel.Timeout(v -> execute(() -> {
+      pollHoldScheduled = false;
+      if (listener != null && !pendingWrites.isEmpty()) {
+        writePendingMessages();
+      }
+    }));
 
     // Start a heartbeat
-
-    heartbeatID = vertx.setPeriodic(heartbeatPeriod, new Handler<Long>() {
-      public void handle(Long id) {
-        if (listener != null) {
-          listener.sendFrame("h");
-        }
-      }
-    });
+    heartbeats.add(this);
   }
 
   @Override
-  public synchronized SockJSSocket write(Buffer buffer) {
-    String msgStr = buffer.toString();
-    pendingWrites.add(msgStr);
-    this.messagesSize += msgStr.length();
+  public SockJSSocket write(Buffer buffer) {
+    if (isOnContext()) {
+      doWrite(buffer);
+    } else {
+      int length = buffer.length();
+      handedOffBytes.addAndGet(length);
+      execute(() -> {
+        handedOffBytes.addAndGet(-length);
+        doWrite(buffer);
+      });
+    }
+    return this;
+  }
+
+  private void doWrite(Buffer buffer) {
+    pendingWrites.add(buffer);
     if (listener != null) {
+      flushPendingMessages();
+    }
+  }
+
+  // Write a message shared with other sessions, it's sent as is unless it has to be batched with queued messages
+  void write(EncodedMessage message) {
+    if (isOnContext()) {
+      doWrite(message);
+    } else {
+      int length = message.element().length();
+      handedOffBytes.addAndGet(length);
+      execute(() -> {
+        handedOffBytes.addAndGet(-length);
+        doWrite(message);
+      });
+    }
+  }
+
+  private void doWrite(EncodedMessage message) {
+    if (listener != null && pendingWrites.isEmpty() && !holdForPoll()) {
+      listener.sendFrame(message);
+      lastFrameTime = System.currentTimeMillis();
+    } else {
+      pendingWrites.addEncoded(message.element());
+      if (listener != null) {
+        flushPendingMessages();
+      }
+    }
+  }
+
+  private boolean holdForPoll() {
+    return pollHoldWindow > 0 && listener.isPolling() && pendingWrites.bytes() < highWatermark;
+  }
+
+  // Write the queued messages now, or once the hold window of a polling listener is over
+  private void flushPendingMessages() {
+    if (!holdForPoll()) {
       writePendingMessages();
+    } else if (!pollHoldScheduled) {
+      pollHoldScheduled = true;
+      pollHoldTimers.schedule(pollHoldTimer, pollHoldWindow);
     }
-    return this;
   }
 
   @Override
-  public synchronized Session handler(Handler<Buffer> handler) {
-    this.dataHandler = handler;
+  public Session handler(Handler<Buffer> handler) {
+    execute(() -> this.dataHandler = handler);
     return this;
   }
 
   @Override
-  public synchronized Session pause() {
-    paused = true;
+  public Session pause() {
+    execute(() -> paused = true);
     return this;
   }
 
   @Override
-  public synchronized Session resume() {
-    paused = false;
-    if (dataHandler != null) {
-      for (String msg: this.pendingReads) {
-        dataHandler.handle(buffer(msg));
+  public Session resume() {
+    execute(() -> {
+      paused = false;
+      if (dataHandler != null) {
+        Buffer msg;
+        // The handler can pause the session again
+        while (!paused && (msg = pendingReads.poll()) != null) {
+          dataHandler.handle(msg);
+        }
       }
-    }
+    });
     return this;
   }
 
   @Override
-  public synchronized Session setWriteQueueMaxSize(int maxQueueSize) {
+  public Session setWriteQueueMaxSize(int maxQueueSize) {
     if (maxQueueSize < 1) {
       throw new IllegalArgumentException("maxQueueSize must be >= 1");
     }
-    this.maxQueueSize = maxQueueSize;
+    this.highWatermark = maxQueueSize;
+    this.lowWatermark = maxQueueSize / 2;
     return this;
   }
 
   @Override
-  public synchronized boolean writeQueueFull() {
-    return messagesSize >= maxQueueSize;
+  public boolean writeQueueFull() {
+    return queuedBytes() >= highWatermark;
+  }
+
+  private int queuedBytes() {
+    return pendingWrites.bytes() + handedOffBytes.get();
   }
 
   @Override
-  public synchronized Session drainHandler(Handler<Void> handler) {
-    this.drainHandler = handler;
+  public Session drainHandler(Handler<Void> handler) {
+    execute(() -> this.drainHandler = handler);
     return this;
   }
 
   @Override
-  public synchronized Session exceptionHandler(Handler<Throwable> handler) {
-    this.exceptionHandler = handler;
+  public Session exceptionHandler(Handler<Throwable> handler) {
+    execute(() -> this.exceptionHandler = handler);
     return this;
   }
 
   @Override
-  public synchronized Session endHandler(Handler<Void> endHandler) {
-    this.endHandler = endHandler;
+  public Session endHandler(Handler<Void> endHandler) {
+    execute(() -> this.endHandler = endHandler);
     return this;
   }
 
 
-  public synchronized void shutdown() {
-    doClose();
+  public void shutdown() {
+    execute(this::doClose);
   }
 
   // When the user calls close() we don't actually close the session - unless it's a websocket one
   // Yes, SockJS is weird, but it's hard to work out expected server behaviour when there's no spec
   @Override
-  public synchronized void close() {
-    if (endHandler != null) {
-      endHandler.handle(null);
-    }
-    closed = true;
-    if (listener != null && handleCalled) {
-      listener.sessionClosed();
-    }
+  public void close() {
+    execute(() -> {
+      if (endHandler != null) {
+        endHandler.handle(null);
+      }
+      closed = true;
+      if (listener != null && handleCalled) {
+        listener.sessionClosed();
+      }
+    });
   }
 
   @Override
@@ -197,60 +284,88 @@ class Session extends SockJSSocketBase implements Shareable {
     return uri;
   }
 
-  synchronized boolean isClosed() {
+  boolean isClosed() {
     return closed;
   }
 
-  synchronized void resetListener() {
-    listener = null;
-    // We set a timer that will kick in and close the session if the client doesn't come back
-    // We MUST ALWAYS do this or we can get a memory leak on the server
-    setTimer();
+  /**
+   * @return the time the session last had a transport connection, {@code Long.MAX_VALUE} if it has one now
+   */
+  long lastConnectedTime() {
+    return lastConnectedTime;
   }
 
-  private void cancelTimer() {
-    if (timeoutTimerID != -1) {
-      vertx.cancelTimer(timeoutTimerID);
+  void resetListener() {
+    execute(() -> {
+      listener = null;
+      lastConnectedTime = System.currentTimeMillis();
+      // We set a timer that will kick in and close the session if the client doesn't come back
+      // We MUST ALWAYS do this or we can get a memory leak on the server
+      setTimer();
+    });
+  }
+
+  private void cancelPollHold() {
+    if (pollHoldScheduled) {
+      pollHoldTimers.cancel(pollHoldTimer);
+      pollHoldScheduled = false;
     }
   }
 
+  private void cancelTimer() {
+    timers.cancel(timeoutTimer);
+  }
+
   private void setTimer() {
     if (timeout != -1) {
-      cancelTimer();
-      timeoutTimerID = vertx.setTimer(timeout, new Handler<Long>() {
-        public void handle(Long id) {
-          vertx.cancelTimer(heartbeatID);
-          if (listener == null) {
-            shutdown();
-          }
-          if (listener != null) {
-            listener.close();
-          }
-        }
-      });
+      timers.schedule(timeoutTimer, timeout);
     }
   }
 
-  synchronized void writePendingMessages() {
-    String json = JsonCodec.encode(pendingWrites.toArray());
-    listener.sendFrame("a" + json);
+  // Called by the heartbeat sweep of the session context - a heartbeat is only needed when nothing was sent for a period
+  void sendHeartbeat(long now, long period) {
+    if (listener != null && now - lastFrameTime >= period) {
+      listener.sendHeartbeat();
+      lastFrameTime = now;
+    }
+  }
+
+  private void handleTimeout() {
+    execute(() -> {
+      heartbeats.remove(this);
+      if (listener == null) {
+        doClose();
+      }
+      if (listener != null) {
+        listener.close();
+      }
+    });
+  }
+
+  private void writePendingMessages() {
+    cancelPollHold();
+    listener.sendFrame(FrameEncoder.encodeMessages(pendingWrites));
+    lastFrameTime = System.currentTimeMillis();
     pendingWrites.clear();
-    messagesSize = 0;
-    if (drainHandler != null && messagesSize <= maxQueueSize / 2) {
+    if (drainHandler != null && queuedBytes() <= lowWatermark) {
       Handler<Void> dh = drainHandler;
       drainHandler = null;
       dh.handle(null);
     }
   }
 
-  synchronized void register(final TransportListener lst) {
+  void register(final TransportListener lst) {
+    execute(() -> doRegister(lst));
+  }
+
+  private void doRegister(TransportListener lst) {
     if (closed) {
       // Closed by the application
       writeClosed(lst);
       // And close the listener request
       lst.close();
     } else if (this.listener != null) {
-      writeClosed(lst, 2010, "Another connection still open");
+      lst.sendFrame(FrameEncoder.ANOTHER_CONNECTION_FRAME);
       // And close the listener request
       lst.close();
     } else {
@@ -258,6 +373,7 @@ class Session extends SockJSSocketBase implements Shareable {
       cancelTimer();
 
       this.listener = lst;
+      lastConnectedTime = Long.MAX_VALUE;
 
       if (!openWritten) {
         writeOpen(lst);
@@ -270,6 +386,7 @@ class Session extends SockJSSocketBase implements Shareable {
           // Could have already been closed by the user
           writeClosed(lst);
           listener = null;
+          lastConnectedTime = System.currentTimeMillis();
           lst.close();
         } else {
           if (!pendingWrites.isEmpty()) {
@@ -284,12 +401,9 @@ class Session extends SockJSSocketBase implements Shareable {
   // Yes, I know it's weird but that's the way SockJS likes it.
   private void doClose() {
     super.close(); // We must call this or handlers don't get unregistered and we get a leak
-    if (heartbeatID != -1) {
-      vertx.cancelTimer(heartbeatID);
-    }
-    if (timeoutTimerID != -1) {
-      vertx.cancelTimer(timeoutTimerID);
-    }
+    heartbeats.remove(this);
+    timers.cancel(timeoutTimer);
+    cancelPollHold();
     if (id != null) {
       // Can be null if websocket session
       sessions.remove(id);
@@ -303,77 +417,92 @@ class Session extends SockJSSocketBase implements Shareable {
     }
   }
 
-  private String[] parseMessageString(String msgs) {
-    try {
-      String[] parts;
-      if (msgs.startsWith("[")) {
-        //JSON array
-        parts = (String[])JsonCodec.decodeValue(msgs, String[].class);
-      } else {
-        //JSON string
-        String str = (String)JsonCodec.decodeValue(msgs, String.class);
-        parts = new String[] { str };
-      }
-      return parts;
-    } catch (DecodeException e) {
-      return null;
-    }
-  }
-
-  boolean handleMessages(String messages) {
-
-    String[] msgArr = parseMessageString(messages);
-
-    if (msgArr == null) {
+  // The payload is validated and split in one pass, the messages are only handed over if it's all valid
+  boolean handleMessages(Buffer payload) {
+    List<Buffer> messages = FrameDecoder.decodeAll(payload);
+    if (messages == null) {
       return false;
-    } else {
-      if (dataHandler != null) {
-        for (String msg : msgArr) {
-          if (!paused) {
-            try {
-              dataHandler.handle(buffer(msg));
-            } catch (Throwable t) {
-              log.error("Unhandle exception", t);
-            }
-          } else {
-            pendingReads.add(msg);
+    }
+    if (!messages.isEmpty()) {
+      execute(() -> {
+        if (dataHandler != null) {
+          for (Buffer msg : messages) {
+            handleMessage(msg);
           }
         }
-      }
-      return true;
+      });
     }
+    return true;
   }
 
-  void handleException(Throwable t) {
-    if (exceptionHandler != null) {
-      exceptionHandler.handle(t);
+  private void handleMessage(Buffer msg) {
+    if (!paused) {
+      try {
+        dataHandler.handle(msg);
+      } catch (Throwable t) {
+        log.error("Unhandle exception", t);
+      }
     } else {
-      log.error("Unhandled exception", t);
+      pendingReads.add(msg);
     }
   }
 
-  public void writeClosed(TransportListener lst) {
-    writeClosed(lst, 3000, "Go away!");
+  void handleException(Throwable t) {
+    execute(() -> {
+      if (exceptionHandler != null) {
+        exceptionHandler.handle(t);
+      } else {
+        log.error("Unhandled exception", t);
+      }
+    });
   }
 
-  private void writeClosed(TransportListener lst, int code, String msg) {
-    StringBuilder sb = new StringBuilder("c[");
-    sb.append(String.valueOf(code)).append(",\"");
-    sb.append(msg).append("\"]");
-    lst.sendFrame(sb.toString());
+  public void writeClosed(TransportListener lst) {
+    lst.sendFrame(FrameEncoder.GO_AWAY_FRAME);
   }
 
   private void writeOpen(TransportListener lst) {
-    StringBuilder sb = new StringBuilder("o");
-    lst.sendFrame(sb.toString());
+    lst.sendFrame(FrameEncoder.OPEN_FRAME);
+    lastFrameTime = System.currentTimeMillis();
     openWritten = true;
   }
 
   void setInfo(SocketAddress localAddress, SocketAddress remoteAddress, String uri,
                MultiMap headers) {
-    this.localAddress = localAddress;
-    this.remoteAddress = remoteAddress;
-    this.uri = uri;
-    this.headers = BaseTransport.removeCookieHeaders(headers);
+    MultiMap sanitized = BaseTransport.removeCookieHeaders(headers);
+    execute(() -> {
+      this.localAddress = localAddress;
+      this.remoteAddress = remoteAddress;
+      this.uri = uri;
+      this.headers = sanitized;
+    });
+  }
+
+  // Runs the task straight away if we are on the session context, otherwise hands it over to the context
+  private void execute(Runnable task) {
+    if (isOnContext()) {
+      if (!tasks.isEmpty()) {
+        // Tasks handed over by other threads were submitted before this one
+        runTasks();
+      }
+      task.run();
+    } else {
+      tasks.add(task);
+      if (tasksScheduled.compareAndSet(false, true)) {
+        context.runOnContext(v -> runTasks());
+      }
+    }
+  }
+
+  private void runTasks() {
+    tasksScheduled.set(false);
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (Throwable t) {
+        log.error("Unhandled exception", t);
+      }
+    }
   }
 }
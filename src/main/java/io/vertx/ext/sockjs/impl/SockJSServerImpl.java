@@ -36,9 +36,7 @@ import io.vertx.ext.sockjs.SockJSSocket;
 import io.vertx.ext.sockjs.Transport;
 
 import java.security.MessageDigest;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -54,16 +52,25 @@ public class SockJSServerImpl implements SockJSServer, Handler<HttpServerRequest
 
   private static final Logger log = LoggerFactory.getLogger(SockJSServerImpl.class);
 
+  private static final Buffer WELCOME_BODY = buffer("Welcome to SockJS!\n");
+
   private final Vertx vertx;
   private RouteMatcher rm = RouteMatcher.routeMatcher();
+  private final TransportDispatcher dispatcher = new TransportDispatcher();
   private WebSocketMatcher wsMatcher = new WebSocketMatcher();
   private final LocalMap<String, Session> sessions;
+  private final SocketGroups groups;
   private EventBusBridgeHook hook;
   private long timerID;
 
   public SockJSServerImpl(Vertx vertx, HttpServer httpServer) {
     this.vertx = vertx;
     this.sessions = vertx.sharedData().getLocalMap("_vertx.sockjssessions");
+    // Groups are shared by all the servers, like sessions are
+    LocalMap<String, SocketGroups> groupsMap = vertx.sharedData().getLocalMap("_vertx.sockjsgroups");
+    SocketGroups groups = new SocketGroups();
+    SocketGroups existing = groupsMap.putIfAbsent("groups", groups);
+    this.groups = existing != null ? existing : groups;
     // Any previous request and websocket handlers will become default handlers
     // if nothing else matches
     rm.noMatch(httpServer.requestHandler());
@@ -99,7 +106,10 @@ public class SockJSServerImpl implements SockJSServer, Handler<HttpServerRequest
     if (log.isTraceEnabled()) {
       log.trace("Got request in sockjs server: " + req.uri());
     }
-    rm.accept(req);
+    // Session requests go straight to their transport, the regex routes handle everything else
+    if (!dispatcher.dispatch(req)) {
+      rm.accept(req);
+    }
   }
 
   public void close() {
@@ -126,7 +136,7 @@ public class SockJSServerImpl implements SockJSServer, Handler<HttpServerRequest
       public void handle(HttpServerRequest req) {
         if (log.isTraceEnabled()) log.trace("Returning welcome response");
         req.response().headers().set("Content-Type", "text/plain; charset=UTF-8");
-        req.response().end("Welcome to SockJS!\n");
+        req.response().end(WELCOME_BODY);
       }
     });
 
@@ -163,20 +173,21 @@ public class SockJSServerImpl implements SockJSServer, Handler<HttpServerRequest
     enabledTransports.removeAll(disabledTransports);
 
     if (enabledTransports.contains(Transport.XHR.toString())) {
-      new XhrTransport(vertx, rm, prefix, sessions, options, sockHandler);
+      new XhrTransport(vertx, dispatcher, prefix, sessions, options, sockHandler);
     }
     if (enabledTransports.contains(Transport.EVENT_SOURCE.toString())) {
-      new EventSourceTransport(vertx, rm, prefix, sessions, options, sockHandler);
+      new EventSourceTransport(vertx, dispatcher, prefix, sessions, options, sockHandler);
     }
     if (enabledTransports.contains(Transport.HTML_FILE.toString())) {
-      new HtmlFileTransport(vertx, rm, prefix, sessions, options, sockHandler);
+      new HtmlFileTransport(vertx, dispatcher, prefix, sessions, options, sockHandler);
     }
     if (enabledTransports.contains(Transport.JSON_P.toString())) {
-      new JsonPTransport(vertx, rm, prefix, sessions, options, sockHandler);
+      new JsonPTransport(vertx, dispatcher, prefix, sessions, options, sockHandler);
     }
     if (enabledTransports.contains(Transport.WEBSOCKET.toString())) {
-      new WebSocketTransport(vertx, wsMatcher, rm, prefix, sessions, options, sockHandler);
-      new RawWebSocketTransport(vertx, wsMatcher, rm, prefix, sockHandler);
+      new WebSocketTransport(vertx, wsMatcher, dispatcher, prefix, sessions, options, sockHandler);
+      new RawWebSocketTransport(vertx, wsMatcher, rm, prefix, options.isRawWebSocketBinary(),
+        options.getRawWebSocketMaxMessageSize(), sockHandler);
     }
     // Catch all for any other requests on this app
 
@@ -199,6 +210,36 @@ public class SockJSServerImpl implements SockJSServer, Handler<HttpServerRequest
     return this;
   }
 
+  public SockJSServerImpl broadcast(Iterable<? extends SockJSSocket> sockets, Buffer message) {
+    EncodedMessage encoded = new EncodedMessage(message);
+    for (SockJSSocket sock : sockets) {
+      encoded.writeTo(sock);
+    }
+    return this;
+  }
+
+  public SockJSServerImpl join(String group, SockJSSocket sock) {
+    groups.join(group, checkSocket(sock));
+    return this;
+  }
+
+  public SockJSServerImpl leave(String group, SockJSSocket sock) {
+    groups.leave(group, checkSocket(sock));
+    return this;
+  }
+
+  public SockJSServerImpl publish(String group, Buffer message) {
+    groups.publish(group, message);
+    return this;
+  }
+
+  private static SockJSSocketBase checkSocket(SockJSSocket sock) {
+    if (!(sock instanceof SockJSSocketBase)) {
+      throw new IllegalArgumentException("Not a SockJS server socket: " + sock);
+    }
+    return (SockJSSocketBase) sock;
+  }
+
 
   private Handler<HttpServerRequest> createChunkingTestHandler() {
     return new Handler<HttpServerRequest>() {
@@ -267,6 +308,7 @@ public class SockJSServerImpl implements SockJSServer, Handler<HttpServerRequest
 
   private Handler<HttpServerRequest> createIFrameHandler(String iframeHTML) {
     String etag = getMD5String(iframeHTML);
+    Buffer body = buffer(iframeHTML);
     return req -> {
       try {
         if (log.isTraceEnabled()) log.trace("In Iframe handler");
@@ -275,12 +317,10 @@ public class SockJSServerImpl implements SockJSServer, Handler<HttpServerRequest
           req.response().end();
         } else {
           req.response().headers().set("Content-Type", "text/html; charset=UTF-8");
-          req.response().headers().set("Cache-Control", "public,max-age=31536000");
-          long oneYear = 365 * 24 * 60 * 60 * 1000;
-          String expires = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").format(new Date(System.currentTimeMillis() + oneYear));
-          req.response().headers().set("Expires", expires);
+          req.response().headers().set("Cache-Control", BaseTransport.ONE_YEAR_CACHE_CONTROL);
+          req.response().headers().set("Expires", BaseTransport.oneYearExpires());
           req.response().headers().set("ETag", etag);
-          req.response().end(iframeHTML);
+          req.response().end(body);
         }
       } catch (Exception e) {
         log.error("Failed to server iframe", e);
@@ -365,17 +405,13 @@ public class SockJSServerImpl implements SockJSServer, Handler<HttpServerRequest
       });
     installApp(new SockJSServerOptions().setPrefix("/broadcast").setMaxBytesStreaming(4096),
       new Handler<SockJSSocket>() {
-        Set<String> connections = new HashSet<>();
+        Set<SockJSSocket> connections = new HashSet<>();
         public void handle(SockJSSocket sock) {
-          connections.add(sock.writeHandlerID());
-          sock.handler(buffer -> {
-            for (String actorID : connections) {
-              vertx.eventBus().publish(actorID, buffer);
-            }
-          });
+          connections.add(sock);
+          sock.handler(buffer -> broadcast(connections, buffer));
           sock.endHandler(new VoidHandler() {
             public void handle() {
-              connections.remove(sock.writeHandlerID());
+              connections.remove(sock);
             }
           });
         }
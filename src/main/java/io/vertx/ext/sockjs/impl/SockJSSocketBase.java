@@ -16,6 +16,7 @@
 
 package io.vertx.ext.sockjs.impl;
 
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
@@ -29,6 +30,12 @@ public abstract class SockJSSocketBase implements SockJSSocket {
 
   private final MessageConsumer<Buffer> registration;
   protected final Vertx vertx;
+  protected final Context context;
+  private final Thread contextThread;
+  // Set when the socket first joins a group, so it can leave its groups when it's closed
+  private volatile SocketGroups groups;
+  // Set when the socket is closed for good and has released its registrations
+  private volatile boolean released;
 
   /**
    * When a {@code SockJSSocket} is created it automatically registers an event handler with the event bus, the ID of that
@@ -41,6 +48,8 @@ public abstract class SockJSSocketBase implements SockJSSocket {
 
   protected SockJSSocketBase(Vertx vertx) {
     this.vertx = vertx;
+    this.context = vertx.getOrCreateContext();
+    this.contextThread = Thread.currentThread();
     Handler<Message<Buffer>> writeHandler = buff -> write(buff.body());
     this.writeHandlerID = UUID.randomUUID().toString();
     this.registration = vertx.eventBus().<Buffer>consumer(writeHandlerID).handler(writeHandler);
@@ -54,5 +63,30 @@ public abstract class SockJSSocketBase implements SockJSSocket {
   @Override
   public void close() {
     registration.unregister();
+    released = true;
+    SocketGroups groups = this.groups;
+    if (groups != null) {
+      groups.leaveAll(this);
+    }
+  }
+
+  boolean isReleased() {
+    return released;
+  }
+
+  Context context() {
+    return context;
+  }
+
+  Thread contextThread() {
+    return contextThread;
+  }
+
+  protected boolean isOnContext() {
+    return Thread.currentThread() == contextThread;
+  }
+
+  void setGroups(SocketGroups groups) {
+    this.groups = groups;
   }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of the socket groups, shared by all the SockJS servers of a Vert.x instance.<p>
+ * Memberships are partitioned by the context that owns the sockets. A partition is only used on its own context,
+ * so it doesn't need to be locked, and it indexes both the sockets of each group and the groups of each socket,
+ * so a closing socket leaves all its groups without scanning them. A partition is dropped once it is empty.<p>
+ * Publishing to a group encodes the message once and runs one task per partition, which writes the message
+ * to the sockets of that partition directly.<p>
+ */
+class SocketGroups implements Shareable {
+
+  private final ConcurrentMap<Context, Partition> partitions = new ConcurrentHashMap<>();
+
+  void join(String group, SockJSSocketBase sock) {
+    sock.setGroups(this);
+    run(sock, () -> {
+      // The socket can have been closed, and have left all its groups, before the join got to its context
+      if (!sock.isReleased()) {
+        partitions.computeIfAbsent(sock.context(), ctx -> new Partition(ctx, sock.contextThread())).join(group, sock);
+      }
+    });
+  }
+
+  void leave(String group, SockJSSocketBase sock) {
+    run(sock, () -> {
+      Partition partition = partitions.get(sock.context());
+      if (partition != null) {
+        partition.leave(group, sock);
+        removeIfEmpty(partition);
+      }
+    });
+  }
+
+  void leaveAll(SockJSSocketBase sock) {
+    run(sock, () -> {
+      Partition partition = partitions.get(sock.context());
+      if (partition != null) {
+        partition.leaveAll(sock);
+        removeIfEmpty(partition);
+      }
+    });
+  }
+
+  void publish(String group, Buffer message) {
+    if (partitions.isEmpty()) {
+      return;
+    }
+    EncodedMessage encoded = new EncodedMessage(message);
+    for (Partition partition : partitions.values()) {
+      partition.run(() -> partition.publish(group, encoded));
+    }
+  }
+
+  // A partition is only changed on its own context, so once it is empty no other thread can add to it and it can go
+  private void removeIfEmpty(Partition partition) {
+    if (partition.memberships.isEmpty()) {
+      partitions.remove(partition.context, partition);
+    }
+  }
+
+  private static void run(SockJSSocketBase sock, Runnable task) {
+    if (Thread.currentThread() == sock.contextThread()) {
+      task.run();
+    } else {
+      sock.context().runOnContext(v -> task.run());
+    }
+  }
+
+  private static final class Partition {
+
+    final Context context;
+    final Thread contextThread;
+    final Map<String, Set<SockJSSocketBase>> members = new HashMap<>();
+    final Map<SockJSSocketBase, Set<String>> memberships = new HashMap<>();
+
+    Partition(Context context, Thread contextThread) {
+      this.context = context;
+      this.contextThread = contextThread;
+    }
+
+    void run(Runnable task) {
+      if (Thread.currentThread() == contextThread) {
+        task.run();
+      } else {
+        context.runOnContext(v -> task.run());
+      }
+    }
+
+    void join(String group, SockJSSocketBase sock) {
+      members.computeIfAbsent(group, g -> new HashSet<>()).add(sock);
+      memberships.computeIfAbsent(sock, s -> new HashSet<>(4)).add(group);
+    }
+
+    void leave(String group, SockJSSocketBase sock) {
+      Set<String> groups = memberships.get(sock);
+      if (groups != null && groups.remove(group)) {
+        if (groups.isEmpty()) {
+          memberships.remove(sock);
+        }
+        removeMember(group, sock);
+      }
+    }
+
+    void leaveAll(SockJSSocketBase sock) {
+      Set<String> groups = memberships.remove(sock);
+      if (groups != null) {
+        for (String group : groups) {
+          removeMember(group, sock);
+        }
+      }
+    }
+
+    void publish(String group, EncodedMessage message) {
+      Set<SockJSSocketBase> socks = members.get(group);
+      if (socks != null) {
+        // Writing can end up closing a socket, which leaves the group, so we don't walk the set itself
+        for (SockJSSocketBase sock : socks.toArray(new SockJSSocketBase[socks.size()])) {
+          message.writeTo(sock);
+        }
+      }
+    }
+
+    private void removeMember(String group, SockJSSocketBase sock) {
+      Set<SockJSSocketBase> socks = members.get(group);
+      if (socks != null && socks.remove(sock) && socks.isEmpty()) {
+        members.remove(group);
+      }
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * A hashed timer wheel used to schedule session deadlines (heartbeats, timeouts).<p>
+ * Instead of creating one Vert.x timer per deadline, a single periodic timer advances the wheel
+ * every {@code tickMillis} and expires the {@link Timeout}s that are due. Scheduling, re-scheduling,
+ * cancelling and expiring a {@link Timeout} is O(1) and does not allocate, as the timeouts are intrusive
+ * nodes owned by the caller.<p>
+ * Deadlines are rounded up to the next tick, so a timeout never fires early but can fire up to
+ * one tick late.<p>
+ * The periodic timer only runs while timeouts are scheduled, it is started by the first timeout
+ * scheduled and cancelled once none is left.<p>
+ * Instances of this class are not thread-safe, a wheel is used on the context that created it, see
+ * {@link ContextTimers}, and its handlers are called on that context.<p>
+ */
+class TimerWheel {
+
+  private static final int IDLE = -1;
+  private static final int EXPIRING = -2;
+  // The periodic timer is started again if it hasn't ticked for that many ticks, e.g. because the
+  // verticle that started it has been undeployed
+  private static final int STALLED_TICKS = 10;
+
+  private final Vertx vertx;
+  private final long tickMillis;
+  private final Timeout[] slots;
+  private final int mask;
+  private final long startTime;
+  private long currentTick;
+  private int scheduled;
+  private long timerID = -1;
+  private long lastTickTime;
+  private Timeout expiredHead;
+  private Timeout expiredTail;
+
+  TimerWheel(Vertx vertx, long tickMillis, int wheelSize) {
+    if (tickMillis < 1) {
+      throw new IllegalArgumentException("tickMillis must be > 0");
+    }
+    if (wheelSize < 1 || Integer.bitCount(wheelSize) != 1) {
+      throw new IllegalArgumentException("wheelSize must be a power of 2");
+    }
+    this.vertx = vertx;
+    this.tickMillis = tickMillis;
+    this.slots = new Timeout[wheelSize];
+    this.mask = wheelSize - 1;
+    this.startTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Schedule the timeout to expire after {@code delay} milliseconds. If the timeout is already scheduled
+   * it is re-armed with the new deadline.
+   */
+  void schedule(Timeout timeout, long delay) {
+    schedule(timeout, delay, System.currentTimeMillis());
+  }
+
+  void schedule(Timeout timeout, long delay, long now) {
+    unlink(timeout);
+    long deadline = (now - startTime + delay + tickMillis - 1) / tickMillis;
+    if (deadline <= currentTick) {
+      deadline = currentTick + 1;
+    }
+    timeout.deadline = deadline;
+    link(timeout, (int) (deadline & mask));
+    if (timerID == -1 || now - lastTickTime > STALLED_TICKS * tickMillis) {
+      startTimer(now);
+    }
+  }
+
+  /**
+   * Cancel the timeout, this is a no-op if the timeout is not scheduled.
+   */
+  void cancel(Timeout timeout) {
+    unlink(timeout);
+  }
+
+  /**
+   * @return whether the periodic timer is running
+   */
+  boolean isTicking() {
+    return timerID != -1;
+  }
+
+  private void startTimer(long now) {
+    if (timerID != -1) {
+      vertx.cancelTimer(timerID);
+    }
+    lastTickTime = now;
+    timerID = vertx.setPeriodic(tickMillis, id -> {
+      lastTickTime = System.currentTimeMillis();
+      expireTimeouts(lastTickTime);
+    });
+  }
+
+  void expireTimeouts(long now) {
+    long targetTick = (now - startTime) / tickMillis;
+    // No need to visit a slot more than once, even if we are late by more than a full rotation
+    long firstTick = Math.max(currentTick + 1, targetTick - mask);
+    // The expired timeouts are chained through their own nodes before any handler is called, as
+    // the handlers will typically re-schedule their timeout or cancel others
+    for (long tick = firstTick; tick <= targetTick; tick++) {
+      collectExpired((int) (tick & mask), targetTick);
+    }
+    if (targetTick > currentTick) {
+      currentTick = targetTick;
+    }
+    Timeout timeout = expiredHead;
+    expiredHead = expiredTail = null;
+    while (timeout != null) {
+      Timeout next = timeout.nextExpired;
+      timeout.nextExpired = null;
+      // The timeout might have been cancelled or re-scheduled by a previous handler
+      if (timeout.slot == EXPIRING) {
+        timeout.slot = IDLE;
+        timeout.handler.handle(null);
+      }
+      timeout = next;
+    }
+    if (scheduled == 0 && timerID != -1) {
+      vertx.cancelTimer(timerID);
+      timerID = -1;
+    }
+  }
+
+  private void collectExpired(int slot, long targetTick) {
+    Timeout timeout = slots[slot];
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      if (timeout.deadline <= targetTick) {
+        unlink(timeout);
+        timeout.slot = EXPIRING;
+        if (expiredTail == null) {
+          expiredHead = timeout;
+        } else {
+          expiredTail.nextExpired = timeout;
+        }
+        expiredTail = timeout;
+      }
+      timeout = next;
+    }
+  }
+
+  private void link(Timeout timeout, int slot) {
+    Timeout head = slots[slot];
+    timeout.slot = slot;
+    timeout.prev = null;
+    timeout.next = head;
+    if (head != null) {
+      head.prev = timeout;
+    }
+    slots[slot] = timeout;
+    scheduled++;
+  }
+
+  private void unlink(Timeout timeout) {
+    int slot = timeout.slot;
+    if (slot >= 0) {
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      } else {
+        slots[slot] = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      scheduled--;
+    }
+    timeout.slot = IDLE;
+  }
+
+  /**
+   * A deadline that can be scheduled on a {@link TimerWheel}. Instances are meant to be created once
+   * and re-armed as many times as needed.
+   */
+  static final class Timeout {
+
+    private final Handler<Void> handler;
+    private Timeout prev;
+    private Timeout next;
+    private Timeout nextExpired;
+    private long deadline;
+    private int slot = IDLE;
+
+    Timeout(Handler<Void> handler) {
+      this.handler = handler;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dispatches the session requests of the transports, the ones with a {@code /{prefix}/{server}/{session}/{transport}}
+ * path, without going through the regular expressions of the {@link RouteMatcher}.<p>
+ * The path is split once from its end, then the app is looked up by prefix, the transport by name and the handler
+ * by HTTP method. The session ID is put in the request parameters as {@code param0}, like the regex routes do.
+ * Requests that don't match are left to the {@link RouteMatcher}.<p>
+ * Instances of this class are not thread-safe, routes must be added before requests are dispatched.<p>
+ */
+class TransportDispatcher {
+
+  private final Map<String, Map<String, TransportRoute>> apps = new HashMap<>();
+
+  /**
+   * Route the requests with the given method for a transport of an app, the first route added for a method wins
+   */
+  TransportDispatcher route(String prefix, String transport, HttpMethod method, Handler<HttpServerRequest> handler) {
+    getRoute(prefix, transport).handlers.putIfAbsent(method, handler);
+    return this;
+  }
+
+  /**
+   * Route the requests with any method that doesn't have its own route for a transport of an app
+   */
+  TransportDispatcher routeAll(String prefix, String transport, Handler<HttpServerRequest> handler) {
+    TransportRoute route = getRoute(prefix, transport);
+    if (route.anyMethod == null) {
+      route.anyMethod = handler;
+    }
+    return this;
+  }
+
+  /**
+   * @return true if the request has been handled, false if it doesn't match any route
+   */
+  boolean dispatch(HttpServerRequest req) {
+    String path = req.path();
+    int transportStart = path.lastIndexOf('/');
+    if (transportStart <= 0) {
+      return false;
+    }
+    int sessionStart = path.lastIndexOf('/', transportStart - 1);
+    if (sessionStart <= 0 || !isPathElement(path, sessionStart + 1, transportStart)) {
+      return false;
+    }
+    int serverStart = path.lastIndexOf('/', sessionStart - 1);
+    if (serverStart <= 0 || !isPathElement(path, serverStart + 1, sessionStart)) {
+      return false;
+    }
+    Map<String, TransportRoute> transports = apps.get(path.substring(0, serverStart));
+    if (transports == null) {
+      return false;
+    }
+    TransportRoute route = transports.get(path.substring(transportStart + 1));
+    if (route == null) {
+      return false;
+    }
+    Handler<HttpServerRequest> handler = route.handlers.get(req.method());
+    if (handler == null) {
+      handler = route.anyMethod;
+      if (handler == null) {
+        return false;
+      }
+    }
+    req.params().set("param0", path.substring(sessionStart + 1, transportStart));
+    handler.handle(req);
+    return true;
+  }
+
+  private TransportRoute getRoute(String prefix, String transport) {
+    return apps.computeIfAbsent(prefix, p -> new HashMap<>()).computeIfAbsent(transport, t -> new TransportRoute());
+  }
+
+  // Server and session IDs are non empty and can't contain a dot
+  private static boolean isPathElement(String path, int start, int end) {
+    if (start == end) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (path.charAt(i) == '.') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class TransportRoute {
+    final Map<HttpMethod, Handler<HttpServerRequest>> handlers = new EnumMap<>(HttpMethod.class);
+    Handler<HttpServerRequest> anyMethod;
+  }
+}
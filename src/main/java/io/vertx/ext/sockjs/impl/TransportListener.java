@@ -16,12 +16,40 @@
 
 package io.vertx.ext.sockjs.impl;
 
+import io.vertx.core.buffer.Buffer;
+
 /**
  * @author <a href="http://tfox.org">Tim Fox</a>
  */
 interface TransportListener {
 
-  void sendFrame(String body);
+  /**
+   * Send an encoded SockJS frame, the frame buffer can be shared and must not be modified
+   */
+  void sendFrame(Buffer frame);
+
+  /**
+   * Send the frame of a message shared by several sessions, transports that wrap frames can override this to
+   * wrap it only once for all the sessions
+   */
+  default void sendFrame(EncodedMessage message) {
+    sendFrame(message.frame());
+  }
+
+  /**
+   * Send a heartbeat frame, transports can override this to write a pre-encoded frame
+   */
+  default void sendHeartbeat() {
+    sendFrame(FrameEncoder.HEARTBEAT_FRAME);
+  }
+
+  /**
+   * @return true if the listener ends its response after a frame, the session can then hold messages a little
+   * to send them together
+   */
+  default boolean isPolling() {
+    return false;
+  }
 
   void close();
 
@@ -29,38 +29,29 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
+ * Dispatches websocket upgrades by path.<p>
+ * The SockJS transports add literal bindings, a session path or an exact path, that are matched by comparing
+ * the path with their prefix and suffix, without regular expressions or a map of params. Regex and pattern bindings
+ * are still supported, bindings are tried in the order they were added and the first matching one wins.<p>
+ * The matcher keeps no state per upgrade, so it can be shared.<p>
+ *
  * @author <a href="http://tfox.org">Tim Fox</a>
  */
 public class WebSocketMatcher implements Handler<ServerWebSocket> {
 
-  private final List<PatternBinding> bindings = new ArrayList<>();
+  private static final String WEBSOCKET_SUFFIX = "/websocket";
+
+  private final List<Binding> bindings = new ArrayList<>();
 
-  private Map<String, String> params;
-  private Handler<Match> handler;
   private Handler<Match> noMatchHandler;
 
   @Override
   public void handle(ServerWebSocket ws) {
     String path = ws.path();
-    for (PatternBinding binding: bindings) {
-      Matcher m = binding.pattern.matcher(path);
-      if (m.matches()) {
-        params = new HashMap<>(m.groupCount());
-        if (binding.paramNames != null) {
-          // Named params
-          for (String param: binding.paramNames) {
-            params.put(param, m.group(param));
-          }
-        } else {
-          // Un-named params
-          for (int i = 0; i < m.groupCount(); i++) {
-            params.put("param" + i, m.group(i + 1));
-          }
-        }
-        handler = binding.handler;
-        handler.handle(new Match(params, ws));
-        params = null;
-        handler = null;
+    for (Binding binding: bindings) {
+      Match match = binding.match(path, ws);
+      if (match != null) {
+        binding.handler.handle(match);
         return;
       }
     }
@@ -71,6 +62,20 @@ public class WebSocketMatcher implements Handler<ServerWebSocket> {
     }
   }
 
+  /**
+   * Match the {@code /{prefix}/{server}/{session}/websocket} paths of an app, the session ID is given by the match
+   */
+  public void addSessionPath(String prefix, Handler<Match> handler) {
+    bindings.add(new SessionPathBinding(prefix, handler));
+  }
+
+  /**
+   * Match exactly the path
+   */
+  public void addPath(String path, Handler<Match> handler) {
+    bindings.add(new ExactPathBinding(path, handler));
+  }
+
   public void addRegEx(String regex, Handler<Match> handler) {
     PatternBinding binding = new PatternBinding(Pattern.compile(regex), null, handler);
     bindings.add(binding);
@@ -104,25 +109,114 @@ public class WebSocketMatcher implements Handler<ServerWebSocket> {
     noMatchHandler = handler;
   }
 
-  private static class PatternBinding {
-    final Pattern pattern;
+  private static abstract class Binding {
     final Handler<Match> handler;
+
+    Binding(Handler<Match> handler) {
+      this.handler = handler;
+    }
+
+    /**
+     * @return the match or null if the path doesn't match
+     */
+    abstract Match match(String path, ServerWebSocket ws);
+  }
+
+  private static class SessionPathBinding extends Binding {
+    final String prefix;
+
+    private SessionPathBinding(String prefix, Handler<Match> handler) {
+      super(handler);
+      this.prefix = prefix;
+    }
+
+    Match match(String path, ServerWebSocket ws) {
+      // The prefix, at least "/s/s" and the suffix
+      int end = path.length() - WEBSOCKET_SUFFIX.length();
+      if (end < prefix.length() + 4 || !path.startsWith(prefix) || !path.endsWith(WEBSOCKET_SUFFIX) ||
+          path.charAt(prefix.length()) != '/') {
+        return null;
+      }
+      int sessionStart = path.indexOf('/', prefix.length() + 1) + 1;
+      // Server and session IDs are non empty and can't contain a dot or a slash
+      if (sessionStart <= prefix.length() + 2 || sessionStart >= end ||
+          !isPathElement(path, prefix.length() + 1, sessionStart - 1) || !isPathElement(path, sessionStart, end)) {
+        return null;
+      }
+      return new Match(ws, path.substring(sessionStart, end));
+    }
+
+    private static boolean isPathElement(String path, int start, int end) {
+      for (int i = start; i < end; i++) {
+        char c = path.charAt(i);
+        if (c == '/' || c == '.') {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static class ExactPathBinding extends Binding {
+    final String path;
+
+    private ExactPathBinding(String path, Handler<Match> handler) {
+      super(handler);
+      this.path = path;
+    }
+
+    Match match(String path, ServerWebSocket ws) {
+      return this.path.equals(path) ? new Match(null, ws) : null;
+    }
+  }
+
+  private static class PatternBinding extends Binding {
+    final Pattern pattern;
     final Set<String> paramNames;
 
     private PatternBinding(Pattern pattern,  Set<String> paramNames, Handler<Match> handler) {
+      super(handler);
       this.pattern = pattern;
       this.paramNames = paramNames;
-      this.handler = handler;
+    }
+
+    Match match(String path, ServerWebSocket ws) {
+      Matcher m = pattern.matcher(path);
+      if (!m.matches()) {
+        return null;
+      }
+      Map<String, String> params = new HashMap<>(m.groupCount());
+      if (paramNames != null) {
+        // Named params
+        for (String param: paramNames) {
+          params.put(param, m.group(param));
+        }
+      } else {
+        // Un-named params
+        for (int i = 0; i < m.groupCount(); i++) {
+          params.put("param" + i, m.group(i + 1));
+        }
+      }
+      return new Match(params, ws);
     }
   }
 
   public static class Match {
     public final Map<String, String> params;
     public final ServerWebSocket ws;
+    // Only set by session path bindings
+    public final String sessionID;
 
     public Match(Map<String, String> params, ServerWebSocket ws) {
       this.params = params;
       this.ws = ws;
+      this.sessionID = null;
+    }
+
+    public Match(ServerWebSocket ws, String sessionID) {
+      this.params = null;
+      this.ws = ws;
+      this.sessionID = sessionID;
     }
   }
 
@@ -18,6 +18,7 @@ package io.vertx.ext.sockjs.impl;
 
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.http.WebSocketFrame;
@@ -35,26 +36,24 @@ class WebSocketTransport extends BaseTransport {
   private static final Logger log = LoggerFactory.getLogger(WebSocketTransport.class);
 
   WebSocketTransport(Vertx vertx, WebSocketMatcher wsMatcher,
-                     RouteMatcher rm, String basePath, LocalMap<String, Session> sessions,
+                     TransportDispatcher dispatcher, String basePath, LocalMap<String, Session> sessions,
                      SockJSServerOptions options,
                      Handler<SockJSSocket> sockHandler) {
     super(vertx, sessions, options);
-    String wsRE = basePath + COMMON_PATH_ELEMENT_RE + "websocket";
-
-    wsMatcher.addRegEx(wsRE, match -> {
+    wsMatcher.addSessionPath(basePath, match -> {
       if (log.isTraceEnabled()) log.trace("WS, handler");
       final Session session = new Session(vertx, sessions, options.getHeartbeatPeriod(), sockHandler);
       session.setInfo(match.ws.localAddress(), match.ws.remoteAddress(), match.ws.uri(), match.ws.headers());
       session.register(new WebSocketListener(match.ws, session));
     });
 
-    rm.matchMethodWithRegEx(HttpMethod.GET, wsRE, request -> {
+    dispatcher.route(basePath, "websocket", HttpMethod.GET, request -> {
       if (log.isTraceEnabled()) log.trace("WS, get: " + request.uri());
       request.response().setStatusCode(400);
       request.response().end("Can \"Upgrade\" only to \"WebSocket\".");
     });
 
-    rm.allWithRegEx(wsRE, request -> {
+    dispatcher.routeAll(basePath, "websocket", request -> {
       if (log.isTraceEnabled()) log.trace("WS, all: " + request.uri());
       request.response().headers().set("Allow", "GET");
       request.response().setStatusCode(405);
@@ -73,13 +72,9 @@ class WebSocketTransport extends BaseTransport {
       this.session = session;
       ws.handler(data -> {
         if (!session.isClosed()) {
-          String msgs = data.toString();
-          if (msgs.equals("")) {
+          if (data.length() == 0) {
             //Ignore empty frames
-          } else if ((msgs.startsWith("[\"") && msgs.endsWith("\"]")) ||
-                     (msgs.startsWith("\"") && msgs.endsWith("\""))) {
-            session.handleMessages(msgs);
-          } else {
+          } else if (!session.handleMessages(data)) {
             //Invalid JSON - we close the connection
             close();
           }
@@ -96,10 +91,19 @@ class WebSocketTransport extends BaseTransport {
       });
     }
 
-    public void sendFrame(final String body) {
+    public void sendFrame(Buffer frame) {
+      if (log.isTraceEnabled()) log.trace("WS, sending frame");
+      if (!closed) {
+        // Sent uncompressed, the HTTP server has no permessage-deflate extension to negotiate
+        ws.writeFrame(WebSocketFrame.textFrame(frame.toString(), true));
+      }
+    }
+
+    @Override
+    public void sendFrame(EncodedMessage message) {
       if (log.isTraceEnabled()) log.trace("WS, sending frame");
       if (!closed) {
-        ws.writeFrame(WebSocketFrame.textFrame(body, true));
+        ws.writeFrame(WebSocketFrame.textFrame(message.frameText(), true));
       }
     }
 
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * The queue of messages written to a session but not yet sent to the client.<p>
+ * Messages are kept as the {@link Buffer}s that were written, in an array backed ring that grows as needed,
+ * and the queue keeps track of the number of bytes it holds. A message can also be queued already escaped,
+ * when it is shared by several sessions, see {@link EncodedMessage}.<p>
+ * Only the session context mutates the queue, the byte count can be read from any thread.<p>
+ */
+class WriteQueue {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private Buffer[] elements = new Buffer[INITIAL_CAPACITY];
+  private boolean[] encoded = new boolean[INITIAL_CAPACITY];
+  private int head;
+  private int size;
+  private volatile int bytes;
+
+  void add(Buffer buffer) {
+    add(buffer, false);
+  }
+
+  /**
+   * Queue a message that is already escaped and quoted, ready to be copied in a frame
+   */
+  void addEncoded(Buffer element) {
+    add(element, true);
+  }
+
+  private void add(Buffer buffer, boolean isEncoded) {
+    if (size == elements.length) {
+      grow();
+    }
+    int index = (head + size) & (elements.length - 1);
+    elements[index] = buffer;
+    encoded[index] = isEncoded;
+    size++;
+    bytes += buffer.length();
+  }
+
+  /**
+   * @return the i-th queued buffer, starting from the oldest one
+   */
+  Buffer get(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+    return elements[(head + i) & (elements.length - 1)];
+  }
+
+  /**
+   * @return true if the i-th queued buffer is already escaped
+   */
+  boolean isEncoded(int i) {
+    return encoded[(head + i) & (elements.length - 1)];
+  }
+
+  Buffer poll() {
+    if (size == 0) {
+      return null;
+    }
+    Buffer buffer = elements[head];
+    elements[head] = null;
+    head = (head + 1) & (elements.length - 1);
+    size--;
+    bytes -= buffer.length();
+    return buffer;
+  }
+
+  void clear() {
+    for (int i = 0; i < size; i++) {
+      elements[(head + i) & (elements.length - 1)] = null;
+    }
+    head = 0;
+    size = 0;
+    bytes = 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the number of bytes held by the queue
+   */
+  int bytes() {
+    return bytes;
+  }
+
+  private void grow() {
+    Buffer[] grown = new Buffer[elements.length << 1];
+    boolean[] grownEncoded = new boolean[grown.length];
+    for (int i = 0; i < size; i++) {
+      int index = (head + i) & (elements.length - 1);
+      grown[i] = elements[index];
+      grownEncoded[i] = encoded[index];
+    }
+    elements = grown;
+    encoded = grownEncoded;
+    head = 0;
+  }
+}
@@ -27,6 +27,8 @@ import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.sockjs.SockJSServerOptions;
 import io.vertx.ext.sockjs.SockJSSocket;
 
+import java.util.function.Function;
+
 import static io.vertx.core.buffer.Buffer.*;
 
 /**
@@ -37,6 +39,9 @@ class XhrTransport extends BaseTransport {
   private static final Logger log = LoggerFactory.getLogger(XhrTransport.class);
 
   private static final Buffer H_BLOCK;
+  private static final Buffer HEARTBEAT_FRAME = buffer("h\n");
+  private static final Function<Buffer, Buffer> FRAME_FORMAT =
+    frame -> buffer(frame.length() + 1).appendBuffer(frame).appendByte((byte) '\n');
 
   static {
     byte[] bytes = new byte[2048 + 1];
@@ -47,28 +52,22 @@ class XhrTransport extends BaseTransport {
     H_BLOCK = buffer(bytes);
   }
 
-  XhrTransport(Vertx vertx, RouteMatcher rm, String basePath, LocalMap<String, Session> sessions, SockJSServerOptions options,
-               Handler<SockJSSocket> sockHandler) {
+  XhrTransport(Vertx vertx, TransportDispatcher dispatcher, String basePath, LocalMap<String, Session> sessions,
+               SockJSServerOptions options, Handler<SockJSSocket> sockHandler) {
 
     super(vertx, sessions, options);
 
-    String xhrBase = basePath + COMMON_PATH_ELEMENT_RE;
-    String xhrRE = xhrBase + "xhr";
-    String xhrStreamRE = xhrBase + "xhr_streaming";
-
     Handler<HttpServerRequest> xhrOptionsHandler = createCORSOptionsHandler(options, "OPTIONS, POST");
 
-    rm.matchMethodWithRegEx(HttpMethod.OPTIONS, xhrRE, xhrOptionsHandler);
-    rm.matchMethodWithRegEx(HttpMethod.OPTIONS, xhrStreamRE, xhrOptionsHandler);
-
-    registerHandler(rm, sockHandler, xhrRE, false, options);
-    registerHandler(rm, sockHandler, xhrStreamRE, true, options);
+    dispatcher.route(basePath, "xhr", HttpMethod.OPTIONS, xhrOptionsHandler);
+    dispatcher.route(basePath, "xhr_streaming", HttpMethod.OPTIONS, xhrOptionsHandler);
 
-    String xhrSendRE = basePath + COMMON_PATH_ELEMENT_RE + "xhr_send";
+    registerHandler(dispatcher, sockHandler, basePath, "xhr", false, options);
+    registerHandler(dispatcher, sockHandler, basePath, "xhr_streaming", true, options);
 
-    rm.matchMethodWithRegEx(HttpMethod.OPTIONS, xhrSendRE, xhrOptionsHandler);
+    dispatcher.route(basePath, "xhr_send", HttpMethod.OPTIONS, xhrOptionsHandler);
 
-    rm.matchMethodWithRegEx(HttpMethod.POST, xhrSendRE, req -> {
+    dispatcher.route(basePath, "xhr_send", HttpMethod.POST, req -> {
       if (log.isTraceEnabled()) log.trace("XHR send, post, " + req.uri());
       String sessionID = req.params().get("param0");
       final Session session = sessions.get(sessionID);
@@ -82,13 +81,13 @@ class XhrTransport extends BaseTransport {
     });
   }
 
-  private void registerHandler(RouteMatcher rm, Handler<SockJSSocket> sockHandler, String re,
-                               boolean streaming, SockJSServerOptions options) {
-    rm.matchMethodWithRegEx(HttpMethod.POST, re, req -> {
+  private void registerHandler(TransportDispatcher dispatcher, Handler<SockJSSocket> sockHandler, String basePath,
+                               String transport, boolean streaming, SockJSServerOptions options) {
+    dispatcher.route(basePath, transport, HttpMethod.POST, req -> {
       if (log.isTraceEnabled()) log.trace("XHR, post, " + req.uri());
       setNoCacheHeaders(req);
       String sessionID = req.params().get("param0");
-      Session session = getSession(options.getSessionTimeout(), options.getHeartbeatPeriod(), sessionID, sockHandler);
+      Session session = getSession(options.getSessionTimeout(), sessionID, sockHandler);
       session.setInfo(req.localAddress(), req.remoteAddress(), req.uri(), req.headers());
       session.register(streaming? new XhrStreamingListener(options.getMaxBytesStreaming(), req, session) : new XhrPollingListener(req, session));
     });
@@ -96,13 +95,12 @@ class XhrTransport extends BaseTransport {
 
   private void handleSend(HttpServerRequest req, Session session) {
     req.bodyHandler(buff -> {
-      String msgs = buff.toString();
-      if (msgs.equals("")) {
+      if (buff.length() == 0) {
         req.response().setStatusCode(500);
         req.response().end("Payload expected.");
         return;
       }
-      if (!session.handleMessages(msgs)) {
+      if (!session.handleMessages(buff)) {
         sendInvalidJSON(req.response());
       } else {
         req.response().headers().set("Content-Type", "text/plain; charset=UTF-8");
@@ -124,13 +122,24 @@ class XhrTransport extends BaseTransport {
       super(req, session);
     }
 
-    public void sendFrame(String body) {
+    public void sendFrame(Buffer frame) {
+      writeFrame(FRAME_FORMAT.apply(frame));
+    }
+
+    public void sendFrame(EncodedMessage message) {
+      writeFrame(message.frame(FRAME_FORMAT));
+    }
+
+    public void sendHeartbeat() {
+      writeFrame(HEARTBEAT_FRAME);
+    }
+
+    protected void writeFrame(Buffer frame) {
       if (log.isTraceEnabled()) log.trace("XHR sending frame");
       if (!headersWritten) {
         req.response().headers().set("Content-Type", "application/javascript; charset=UTF-8");
         setJSESSIONID(options, req);
         setCORS(req);
-        req.response().setChunked(true);
         headersWritten = true;
       }
     }
@@ -146,20 +155,32 @@ class XhrTransport extends BaseTransport {
       addCloseHandler(req.response(), session);
     }
 
-    public void sendFrame(String body) {
-      super.sendFrame(body);
-      req.response().write(body + "\n");
-      close();
+    protected void writeFrame(Buffer frame) {
+      super.writeFrame(frame);
+      end(frame);
+    }
+
+    public boolean isPolling() {
+      return true;
     }
 
     public void close() {
+      end(null);
+    }
+
+    // The poll ends with a Content-Length rather than chunked and the connection is kept, so the client can
+    // send its next poll on it
+    private void end(Buffer frame) {
       if (log.isTraceEnabled()) log.trace("XHR poll closing listener");
       if (!closed) {
         try {
           session.resetListener();
-          req.response().end();
-          req.response().close();
           closed = true;
+          if (frame == null) {
+            req.response().end();
+          } else {
+            req.response().end(FrameEncoder.writable(frame));
+          }
         } catch (IllegalStateException e) {
           // Underlying connection might already be closed - that's fine
         }
@@ -169,25 +190,30 @@ class XhrTransport extends BaseTransport {
 
   private class XhrStreamingListener extends BaseXhrListener {
 
+    final ChunkedWriter writer;
     int bytesSent;
     int maxBytesStreaming;
 
     XhrStreamingListener(int maxBytesStreaming, HttpServerRequest req, Session session) {
       super(req, session);
       this.maxBytesStreaming = maxBytesStreaming;
+      this.writer = new ChunkedWriter(vertx, req.response(), options.getStreamingFlushDelay(), createGzipEncoder(req));
       addCloseHandler(req.response(), session);
     }
 
-    public void sendFrame(String body) {
+    protected void connectionClosed() {
+      writer.release();
+    }
+
+    protected void writeFrame(Buffer frame) {
       boolean hr = headersWritten;
-      super.sendFrame(body);
+      super.writeFrame(frame);
       if (!hr) {
-        req.response().write(H_BLOCK);
+        req.response().setChunked(true);
+        writer.writePrelude(H_BLOCK);
       }
-      String sbody = body + "\n";
-      Buffer buff = buffer(sbody);
-      req.response().write(buff);
-      bytesSent += buff.length();
+      writer.write(frame);
+      bytesSent += frame.length();
       if (bytesSent >= maxBytesStreaming) {
         close();
       }
@@ -198,7 +224,7 @@ class XhrTransport extends BaseTransport {
       if (!closed) {
         session.resetListener();
         try {
-          req.response().end();
+          writer.end();
           req.response().close();
           closed = true;
         } catch (IllegalStateException e) {
@@ -16,6 +16,7 @@
 
 /** @module vertx-sockjs-js/sock_js_server */
 var utils = require('vertx-js/util/utils');
+var Buffer = require('vertx-js/buffer');
 var SockJSSocket = require('vertx-sockjs-js/sock_js_socket');
 var HttpServer = require('vertx-js/http_server');
 
@@ -67,6 +68,56 @@ var SockJSServer = function(j_val) {
     } else utils.invalidArgs();
   };
 
+  /**
+   Add the socket to a group, groups are shared by all the SockJS servers of the Vert.x instance.
+   A socket leaves all its groups when it's closed.
+
+   @public
+   @param group {string} 
+   @param sock {SockJSSocket} 
+   @return {SockJSServer}
+   */
+  this.join = function(group, sock) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] === 'string' && typeof __args[1] === 'object' && __args[1]._jdel) {
+      j_sockJSServer.join(group, sock._jdel);
+      return that;
+    } else utils.invalidArgs();
+  };
+
+  /**
+   Remove the socket from a group
+
+   @public
+   @param group {string} 
+   @param sock {SockJSSocket} 
+   @return {SockJSServer}
+   */
+  this.leave = function(group, sock) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] === 'string' && typeof __args[1] === 'object' && __args[1]._jdel) {
+      j_sockJSServer.leave(group, sock._jdel);
+      return that;
+    } else utils.invalidArgs();
+  };
+
+  /**
+   Write the message to all the sockets of a group. The message is encoded once and written to the sockets
+   by the event loops that own them, with one task per event loop.
+
+   @public
+   @param group {string} 
+   @param message {Buffer} 
+   @return {SockJSServer}
+   */
+  this.publish = function(group, message) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] === 'string' && typeof __args[1] === 'object' && __args[1]._jdel) {
+      j_sockJSServer.publish(group, message._jdel);
+      return that;
+    } else utils.invalidArgs();
+  };
+
   /**
 
    @public
@@ -16,32 +16,49 @@
 
 package io.vertx.ext.eventbusbridge.test;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.http.WebSocketFrame;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.sockjs.BridgeOptions;
+import io.vertx.ext.sockjs.EventBusBridgeHook;
 import io.vertx.ext.sockjs.SockJSServer;
 import io.vertx.ext.sockjs.SockJSServerOptions;
+import io.vertx.ext.sockjs.SockJSSocket;
 import io.vertx.test.core.HttpTestBase;
 import io.vertx.test.core.VertxTestBase;
 import org.junit.Test;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="http://tfox.org">Tim Fox</a>
  */
 public class EventBusBridgeTest extends VertxTestBase {
 
+  private static final long PING_TIMEOUT = 200;
+
   private HttpServer server;
+  private SockJSServer sockJSServer;
+  private final TestHook hook = new TestHook();
 
   @Override
   public void setUp() throws Exception {
     super.setUp();
     server = vertx.createHttpServer(new HttpServerOptions().setPort(HttpTestBase.DEFAULT_HTTP_PORT));
-    SockJSServer sockJSServer = SockJSServer.sockJSServer(vertx, server);
+    sockJSServer = SockJSServer.sockJSServer(vertx, server);
     sockJSServer.bridge(new SockJSServerOptions().setPrefix("/eventbus"), new BridgeOptions().addInboundPermitted(new JsonObject()).addOutboundPermitted(new JsonObject()));
   }
 
@@ -84,4 +101,271 @@ public class EventBusBridgeTest extends VertxTestBase {
 
     await();
   }
+
+  @Test
+  public void testSharedConsumerFansOut() {
+    AtomicInteger registered = new AtomicInteger();
+    AtomicInteger received = new AtomicInteger();
+    hook.postRegister = address -> {
+      if (registered.incrementAndGet() == 2) {
+        vertx.eventBus().publish("news", "hello");
+      }
+    };
+    connectShared(2, (index, ws) -> {
+      ws.handler(buff -> {
+        JsonObject msg = new JsonObject(buff.toString());
+        assertEquals("news", msg.getString("address"));
+        assertEquals("hello", msg.getString("body"));
+        if (received.incrementAndGet() == 2) {
+          testComplete();
+        }
+      });
+      register(ws, "news");
+    });
+    await();
+  }
+
+  @Test
+  public void testSharedConsumerReplyToOneSocket() {
+    int messages = 4;
+    AtomicInteger registered = new AtomicInteger();
+    int[] receivedBySocket = new int[2];
+    Set<String> bodies = new HashSet<>();
+    hook.postRegister = address -> {
+      if (registered.incrementAndGet() == 2) {
+        for (int i = 0; i < messages; i++) {
+          // The sockets never reply, the sends just time out
+          vertx.eventBus().send("work", "job" + i, ar -> {});
+        }
+      }
+    };
+    connectShared(2, (index, ws) -> {
+      ws.handler(buff -> {
+        JsonObject msg = new JsonObject(buff.toString());
+        assertNotNull(msg.getString("replyAddress"));
+        // Each message is written to a single socket
+        assertTrue(bodies.add(msg.getString("body")));
+        receivedBySocket[index]++;
+        if (bodies.size() == messages) {
+          // The sockets took turns
+          assertEquals(messages / 2, receivedBySocket[0]);
+          assertEquals(messages / 2, receivedBySocket[1]);
+          testComplete();
+        }
+      });
+      register(ws, "work");
+    });
+    await();
+  }
+
+  @Test
+  public void testSharedConsumerRequiresAuth() {
+    AtomicInteger ready = new AtomicInteger();
+    AtomicInteger done = new AtomicInteger();
+    Runnable publish = () -> {
+      // 4 registrations and the login of the first socket
+      if (ready.incrementAndGet() == 5) {
+        vertx.eventBus().publish("secure", "secret");
+        vertx.eventBus().publish("public", "hello");
+      }
+    };
+    hook.postRegister = address -> publish.run();
+    vertx.eventBus().consumer("login").handler(msg -> publish.run());
+    connectShared(2, (index, ws) -> {
+      AtomicInteger received = new AtomicInteger();
+      ws.handler(buff -> {
+        JsonObject msg = new JsonObject(buff.toString());
+        if (index == 0 && received.incrementAndGet() == 1) {
+          // The authed socket gets the secure message first
+          assertEquals("secure", msg.getString("address"));
+          assertEquals("secret", msg.getString("body"));
+          return;
+        }
+        // The other socket only gets the public message
+        assertEquals("public", msg.getString("address"));
+        if (done.incrementAndGet() == 2) {
+          testComplete();
+        }
+      });
+      register(ws, "secure");
+      register(ws, "public");
+      if (index == 0) {
+        send(ws, new JsonObject().put("type", "send").put("address", "login").put("body", "me").put("sessionID", "session1"));
+      }
+    });
+    await();
+  }
+
+  @Test
+  public void testSharedConsumerUnregistered() {
+    AtomicBoolean registered = new AtomicBoolean();
+    hook.postRegister = address -> registered.set(true);
+    hook.unregistered = address -> {
+      assertTrue(registered.get());
+      assertNoHandlers(address);
+    };
+    connectShared(1, (index, ws) -> {
+      register(ws, "news");
+      send(ws, new JsonObject().put("type", "unregister").put("address", "news"));
+    });
+    await();
+  }
+
+  @Test
+  public void testSharedConsumerUnregisteredOnClose() {
+    AtomicBoolean registered = new AtomicBoolean();
+    hook.postRegister = address -> registered.set(true);
+    hook.closed = sock -> {
+      assertTrue(registered.get());
+      assertNoHandlers("news");
+    };
+    connectShared(1, (index, ws) -> {
+      register(ws, "news");
+      ws.close();
+    });
+    await();
+  }
+
+  @Test
+  public void testStaleSocketClosed() {
+    long start = System.currentTimeMillis();
+    connectLive("/live/websocket", ws -> ws.closeHandler(v -> {
+      assertTrue(System.currentTimeMillis() - start >= PING_TIMEOUT);
+      testComplete();
+    }));
+    await();
+  }
+
+  @Test
+  public void testDataCountsAsPing() {
+    AtomicBoolean sending = new AtomicBoolean(true);
+    connectLive("/live/websocket", ws -> {
+      ws.closeHandler(v -> {
+        // Only closed once it stopped sending
+        assertFalse(sending.get());
+        testComplete();
+      });
+      long timer = vertx.setPeriodic(PING_TIMEOUT / 4, id ->
+        send(ws, new JsonObject().put("type", "publish").put("address", "news").put("body", "hello")));
+      vertx.setTimer(PING_TIMEOUT * 3, id -> {
+        vertx.cancelTimer(timer);
+        sending.set(false);
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testConnectedSessionNotTimedOut() {
+    AtomicBoolean done = new AtomicBoolean();
+    // The SockJS websocket transport, the session stays connected and never sends a ping
+    connectLive("/live/000/session1/websocket", ws -> {
+      ws.closeHandler(v -> {
+        if (!done.get()) {
+          fail("The connected session should not have been closed");
+        }
+      });
+      vertx.setTimer(PING_TIMEOUT * 3, id -> {
+        done.set(true);
+        testComplete();
+      });
+    });
+    await();
+  }
+
+  // Bridges at /live with a short ping timeout
+  private void connectLive(String uri, Handler<WebSocket> handler) {
+    sockJSServer.bridge(new SockJSServerOptions().setPrefix("/live"), new BridgeOptions()
+      .setPingTimeout(PING_TIMEOUT).addInboundPermitted(new JsonObject()).addOutboundPermitted(new JsonObject()));
+    connect(uri, 1, (index, ws) -> handler.handle(ws));
+  }
+
+  // Bridges at /shared with consumers shared and the test hook, messages to "secure" are only written to authed sockets
+  private void connectShared(int count, SocketHandler handler) {
+    sockJSServer.setHook(hook);
+    sockJSServer.bridge(new SockJSServerOptions().setPrefix("/shared"), new BridgeOptions().setSharedConsumers(true)
+      .addInboundPermitted(new JsonObject().put("address", "login").put("requires_auth", true))
+      .addInboundPermitted(new JsonObject())
+      .addOutboundPermitted(new JsonObject().put("address", "secure").put("requires_auth", true))
+      .addOutboundPermitted(new JsonObject()));
+    connect("/shared/websocket", count, handler);
+  }
+
+  private void connect(String uri, int count, SocketHandler handler) {
+    HttpClient client = vertx.createHttpClient(new HttpClientOptions());
+    server.listen(ar -> {
+      assertTrue(ar.succeeded());
+      for (int i = 0; i < count; i++) {
+        int index = i;
+        client.connectWebsocket(HttpTestBase.DEFAULT_HTTP_PORT, HttpTestBase.DEFAULT_HTTP_HOST, uri,
+          ws -> handler.handle(index, ws));
+      }
+    });
+  }
+
+  private void assertNoHandlers(String address) {
+    vertx.eventBus().send(address, "ping", ar -> {
+      assertTrue(ar.failed());
+      assertEquals(ReplyFailure.NO_HANDLERS, ((ReplyException) ar.cause()).failureType());
+      testComplete();
+    });
+  }
+
+  private static void register(WebSocket ws, String address) {
+    send(ws, new JsonObject().put("type", "register").put("address", address));
+  }
+
+  private static void send(WebSocket ws, JsonObject msg) {
+    ws.writeFrame(WebSocketFrame.textFrame(msg.encode(), true));
+  }
+
+  private interface SocketHandler {
+    void handle(int index, WebSocket ws);
+  }
+
+  // Lets the tests follow the bridge, authorises every session
+  private class TestHook implements EventBusBridgeHook {
+
+    volatile Handler<String> postRegister = address -> {};
+    volatile Handler<String> unregistered = address -> {};
+    volatile Handler<SockJSSocket> closed = sock -> {};
+
+    @Override
+    public boolean handleSocketCreated(SockJSSocket sock) {
+      return true;
+    }
+
+    @Override
+    public void handleSocketClosed(SockJSSocket sock) {
+      closed.handle(sock);
+    }
+
+    @Override
+    public boolean handleSendOrPub(SockJSSocket sock, boolean send, JsonObject msg, String address) {
+      return true;
+    }
+
+    @Override
+    public boolean handlePreRegister(SockJSSocket sock, String address) {
+      return true;
+    }
+
+    @Override
+    public void handlePostRegister(SockJSSocket sock, String address) {
+      postRegister.handle(address);
+    }
+
+    @Override
+    public boolean handleUnregister(SockJSSocket sock, String address) {
+      // Called before the registration is removed
+      vertx.runOnContext(v -> unregistered.handle(address));
+      return true;
+    }
+
+    @Override
+    public boolean handleAuthorise(JsonObject message, String sessionID, Handler<AsyncResult<Boolean>> handler) {
+      handler.handle(Future.succeededFuture(true));
+      return true;
+    }
+  }
 }
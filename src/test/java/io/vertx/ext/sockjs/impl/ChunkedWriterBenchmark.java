@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the chunks written by the chunked writers of 1000 streaming sessions on one context, and times how fast
+ * they take frames, for each flush delay. The frames are written as fast as the context runs: each event loop
+ * task writes one frame to every session, like a broadcast does, so the flushes and their timers compete with
+ * the writes.
+ * It is not run with the tests, run its main method.
+ */
+public class ChunkedWriterBenchmark {
+
+  private static final int SESSIONS = 1000;
+  private static final int ROUNDS = 2000;
+
+  public static void main(String[] args) throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      Context context = vertx.getOrCreateContext();
+      for (long flushDelay : new long[]{-1, 0, 1, 5, 20}) {
+        // Warm up before measuring
+        run(vertx, context, flushDelay);
+        System.out.println(run(vertx, context, flushDelay));
+      }
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static String run(Vertx vertx, Context context, long flushDelay) throws Exception {
+    AtomicLong chunks = new AtomicLong();
+    HttpServerResponse response = (HttpServerResponse) Proxy.newProxyInstance(
+      ChunkedWriterBenchmark.class.getClassLoader(), new Class[]{HttpServerResponse.class}, (proxy, method, a) -> {
+        if (method.getName().equals("write") || method.getName().equals("end")) {
+          chunks.incrementAndGet();
+        }
+        return method.getReturnType().isInstance(proxy) ? proxy : null;
+      });
+    Buffer frame = Buffer.buffer("a[\"{\\\"type\\\":\\\"update\\\",\\\"id\\\":1234,\\\"value\\\":\\\"hello\\\"}\"]\n");
+    CountDownLatch done = new CountDownLatch(1);
+    long start = System.nanoTime();
+    context.runOnContext(new Handler<Void>() {
+      final ChunkedWriter[] writers = new ChunkedWriter[SESSIONS];
+      int round;
+
+      @Override
+      public void handle(Void v) {
+        if (round == 0) {
+          for (int i = 0; i < SESSIONS; i++) {
+            writers[i] = new ChunkedWriter(vertx, response, flushDelay, null);
+          }
+        }
+        for (ChunkedWriter writer : writers) {
+          writer.write(frame);
+        }
+        if (++round < ROUNDS) {
+          context.runOnContext(this);
+        } else {
+          for (ChunkedWriter writer : writers) {
+            writer.end();
+          }
+          done.countDown();
+        }
+      }
+    });
+    done.await();
+    long time = System.nanoTime() - start;
+    long frames = (long) SESSIONS * ROUNDS;
+    return String.format("flush delay %2d: %7d chunks for %d frames, %5.1f frames per chunk, %5d frames/ms",
+      flushDelay, chunks.get(), frames, (double) frames / chunks.get(), frames * 1_000_000 / time);
+  }
+}
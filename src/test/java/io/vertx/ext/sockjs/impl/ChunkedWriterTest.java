@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Apache License v2.0 is available at
+ * http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The chunks a chunked writer writes for each flush delay, on a context like a session's.
+ */
+public class ChunkedWriterTest extends VertxTestBase {
+
+  private static final long FLUSH_DELAY = 50;
+
+  private final List<String> chunks = new CopyOnWriteArrayList<>();
+  private HttpServerResponse response;
+  private Context context;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    context = vertx.getOrCreateContext();
+    response = recordingResponse(chunks);
+  }
+
+  @Test
+  public void testChunkPerFrame() {
+    context.runOnContext(v -> {
+      ChunkedWriter writer = new ChunkedWriter(vertx, response, -1, null);
+      writer.write(Buffer.buffer("a"));
+      writer.write(Buffer.buffer("b"));
+      writer.end();
+      assertEquals("[a, b, end]", chunks.toString());
+      testComplete();
+    });
+    await();
+  }
+
+  @Test
+  public void testFlushOnceTaskDone() {
+    context.runOnContext(v -> {
+      ChunkedWriter writer = new ChunkedWriter(vertx, response, 0, null);
+      writer.write(Buffer.buffer("a"));
+      writer.write(Buffer.buffer("b"));
+      assertEquals(0, chunks.size());
+      context.runOnContext(v2 -> {
+        assertEquals("[ab]", chunks.toString());
+        testComplete();
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testFlushDelay() {
+    context.runOnContext(v -> {
+      ChunkedWriter writer = new ChunkedWriter(vertx, response, FLUSH_DELAY, null);
+      long start = System.currentTimeMillis();
+      writer.write(Buffer.buffer("a"));
+      writer.write(Buffer.buffer("b"));
+      vertx.setTimer(FLUSH_DELAY / 2, id -> {
+        assertEquals(0, chunks.size());
+        writer.write(Buffer.buffer("c"));
+      });
+      // Polls for the chunk, to tell how late it was flushed
+      vertx.setPeriodic(1, id -> {
+        if (!chunks.isEmpty()) {
+          long elapsed = System.currentTimeMillis() - start;
+          vertx.cancelTimer(id);
+          assertEquals("[abc]", chunks.toString());
+          assertTrue("Flushed after " + elapsed + " ms", elapsed >= FLUSH_DELAY && elapsed < FLUSH_DELAY + 20);
+          testComplete();
+        }
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testEndCancelsFlush() {
+    context.runOnContext(v -> {
+      ChunkedWriter writer = new ChunkedWriter(vertx, response, FLUSH_DELAY, null);
+      writer.write(Buffer.buffer("a"));
+      writer.write(Buffer.buffer("b"));
+      writer.end();
+      assertEquals("[end ab]", chunks.toString());
+      vertx.setTimer(FLUSH_DELAY * 2, id -> {
+        assertEquals("[end ab]", chunks.toString());
+        testComplete();
+      });
+    });
+    await();
+  }
+
+  /**
+   * @return a response that records its chunks, {@code end} and {@code end <chunk>} for the last one
+   */
+  static HttpServerResponse recordingResponse(List<String> chunks) {
+    return (HttpServerResponse) Proxy.newProxyInstance(ChunkedWriterTest.class.getClassLoader(),
+      new Class[]{HttpServerResponse.class}, (proxy, method, args) -> {
+        if (method.getName().equals("write")) {
+          chunks.add(args[0].toString());
+        } else if (method.getName().equals("end")) {
+          chunks.add(args == null ? "end" : "end " + args[0]);
+        }
+        return method.getReturnType().isInstance(proxy) ? proxy : null;
+      });
+  }
+}
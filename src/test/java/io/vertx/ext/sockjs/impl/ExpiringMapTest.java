@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The map is swept manually with a time to live large enough for its own periodic sweep never to run during a test.
+ */
+public class ExpiringMapTest extends VertxTestBase {
+
+  private static final long TTL = 60 * 60 * 1000;
+
+  private final List<String> expired = new ArrayList<>();
+  private ExpiringMap<String, Integer> map;
+  private long now;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    map = new ExpiringMap<>(vertx, TTL, (key, value) -> expired.add(key + "=" + value));
+    now = System.currentTimeMillis();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    // Sweeping the empty map cancels its periodic sweep
+    map.sweep(Long.MAX_VALUE);
+    super.tearDown();
+  }
+
+  @Test
+  public void testExpiresAfterTimeToLive() {
+    map.put("a", 1, now);
+    map.put("b", 2, now + 10);
+    assertEquals(1, (int) map.get("a", now + TTL - 1));
+    assertNull(map.get("a", now + TTL));
+    map.sweep(now + TTL);
+    assertEquals(1, map.size());
+    assertEquals(2, (int) map.get("b", now + TTL));
+    map.sweep(now + TTL + 10);
+    assertEquals(0, map.size());
+    assertEquals(2, expired.size());
+    assertEquals("a=1", expired.get(0));
+    assertEquals("b=2", expired.get(1));
+  }
+
+  @Test
+  public void testRemoved() {
+    map.put("a", 1, now);
+    assertEquals(1, (int) map.remove("a", now + 1));
+    assertNull(map.remove("a", now + 1));
+    map.put("b", 2, now);
+    assertNull(map.remove("b", now + TTL));
+    map.sweep(now + 2 * TTL);
+    assertTrue(expired.isEmpty());
+  }
+
+  @Test
+  public void testPutAgain() {
+    map.put("a", 1, now);
+    map.put("a", 2, now + TTL / 2);
+    map.sweep(now + TTL);
+    assertEquals(2, (int) map.get("a", now + TTL));
+    assertTrue(expired.isEmpty());
+    map.sweep(now + TTL + TTL / 2);
+    assertEquals(1, expired.size());
+    assertEquals("a=2", expired.get(0));
+  }
+
+  @Test
+  public void testPutAgainAfterExpiry() {
+    map.put("a", 1, now);
+    // Expired but not swept yet
+    map.put("a", 2, now + TTL);
+    assertEquals(1, expired.size());
+    assertEquals("a=1", expired.get(0));
+    assertEquals(2, (int) map.get("a", now + TTL));
+    map.sweep(now + TTL);
+    assertEquals(1, expired.size());
+    assertEquals(1, map.size());
+  }
+
+  @Test
+  public void testExpiryHandlerRemovesKeyOnPut() {
+    map = new ExpiringMap<>(vertx, TTL, (key, value) -> {
+      expired.add(key + "=" + value);
+      map.remove(key);
+    });
+    map.put("a", 1, now);
+    map.put("a", 2, now + TTL);
+    assertEquals("a=1", expired.get(0));
+    assertEquals(2, (int) map.get("a", now + TTL));
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Valid payloads must decode to the same messages {@link JsonCodec} decodes them to.
+ */
+public class FrameDecoderTest extends VertxTestBase {
+
+  @Test
+  public void testDecode() {
+    assertDecoded("[\"a\",\"b\"]", "a", "b");
+    assertDecoded(" [ \"a\" , \"\" ]\r\n", "a", "");
+    assertDecoded("[]");
+    assertDecoded("\"single\"", "single");
+    assertDecoded("[\"\\\"\\\\\\/\\b\\f\\n\\r\\t\"]", "\"\\/\b\f\n\r\t");
+    assertDecoded("[\"caf\\u00e9 \\u4E2D \\ud83d\\ude00\"]", "caf\u00e9 \u4e2d \ud83d\ude00");
+    assertDecoded("[\"caf\u00e9 \u4e2d \ud83d\ude00\"]", "caf\u00e9 \u4e2d \ud83d\ude00");
+  }
+
+  @Test
+  public void testDecodeLoneSurrogate() {
+    List<Buffer> decoded = decode("[\"a\\ud83db\",\"\\ude00\"]");
+    assertEquals(Buffer.buffer("a?b"), decoded.get(0));
+    assertEquals(Buffer.buffer("?"), decoded.get(1));
+  }
+
+  @Test
+  public void testDecodeEncodedMessages() {
+    Random random = new Random(1234);
+    for (int i = 0; i < 1000; i++) {
+      WriteQueue queue = new WriteQueue();
+      List<Buffer> messages = new ArrayList<>();
+      for (int j = 0; j < 3; j++) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 16; k++) {
+          sb.append((char) (random.nextBoolean() ? random.nextInt(0x80) : 0x80 + random.nextInt(0xD700)));
+        }
+        Buffer msg = Buffer.buffer(sb.toString(), "UTF-8");
+        queue.add(msg);
+        messages.add(msg);
+      }
+      Buffer frame = FrameEncoder.encodeMessages(queue);
+      assertEquals(messages, decode(frame.getString(1, frame.length())));
+    }
+  }
+
+  @Test
+  public void testInvalid() {
+    String[] invalid = {"", " ", "[", "]", "[\"a\"", "[\"a\",]", "[,\"a\"]", "[\"a\" \"b\"]", "[1]", "[null]",
+      "{\"a\":\"b\"}", "\"a", "\"a\"x", "[\"a\"]]", "[\"\\x\"]", "[\"\\u12\"]", "[\"\\u12g4\"]", "[\"\u0001\"]",
+      "[\"a\\\"]", "[[\"a\"]]", "[\"a\",1]"};
+    for (String payload : invalid) {
+      assertNull(FrameDecoder.decodeAll(Buffer.buffer(payload, "UTF-8")));
+    }
+  }
+
+  private List<Buffer> decode(String payload) {
+    List<Buffer> decoded = FrameDecoder.decodeAll(Buffer.buffer(payload, "UTF-8"));
+    assertNotNull(decoded);
+    return decoded;
+  }
+
+  private void assertDecoded(String payload, String... expected) {
+    List<Buffer> decoded = decode(payload);
+    String trimmed = payload.trim();
+    String[] viaCodec = trimmed.startsWith("[") ? (String[]) JsonCodec.decodeValue(trimmed, String[].class) :
+      new String[]{(String) JsonCodec.decodeValue(trimmed, String.class)};
+    assertEquals(expected.length, viaCodec.length);
+    assertEquals(expected.length, decoded.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], viaCodec[i]);
+      assertEquals(Buffer.buffer(expected[i], "UTF-8"), decoded.get(i));
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times encoding a message frame from the messages written to a session, with the frame encoder and with
+ * {@link JsonCodec}, which is how sessions used to encode them: each message turned into a string, the strings
+ * encoded as a JSON array and the frame turned back into bytes.
+ * It is not run with the tests, run its main method.
+ */
+public class FrameEncoderBenchmark {
+
+  private static final int FRAMES = 500_000;
+
+  public static void main(String[] args) {
+    StringBuilder json = new StringBuilder("{\"items\":[");
+    for (int i = 0; i < 20; i++) {
+      json.append(i > 0 ? "," : "").append("{\"id\":").append(i).append(",\"name\":\"item ").append(i)
+        .append("\",\"price\":").append(i * 1.5).append(",\"tags\":[\"a\",\"b\"]}");
+    }
+    json.append("]}");
+    run("plain text, 40 bytes", "The quick brown fox jumps over the lazy", 1);
+    run("JSON, 45 bytes", "{\"type\":\"update\",\"id\":1234,\"value\":\"hello\"}", 1);
+    run("JSON, 45 bytes", "{\"type\":\"update\",\"id\":1234,\"value\":\"hello\"}", 10);
+    run("non-ASCII text", "café crème brûlée 中文文本", 1);
+    run("JSON, " + json.length() + " bytes", json.toString(), 1);
+  }
+
+  private static void run(String name, String message, int batch) {
+    Buffer[] messages = new Buffer[batch];
+    for (int i = 0; i < batch; i++) {
+      messages[i] = Buffer.buffer(message);
+    }
+    // Warm up both paths before timing them
+    for (int i = 0; i < 3; i++) {
+      jsonCodec(messages);
+      frameEncoder(messages);
+    }
+    System.out.printf("%-22s x%-2d: JsonCodec %s, FrameEncoder %s%n", name, batch, jsonCodec(messages),
+      frameEncoder(messages));
+  }
+
+  private static String jsonCodec(Buffer[] messages) {
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    int length = 0;
+    String[] strings = new String[messages.length];
+    for (int i = 0; i < FRAMES; i++) {
+      for (int j = 0; j < messages.length; j++) {
+        strings[j] = messages[j].toString();
+      }
+      length += Buffer.buffer("a" + JsonCodec.encode(strings)).length();
+    }
+    return result(System.nanoTime() - start, allocatedBytes() - allocated, length);
+  }
+
+  private static String frameEncoder(Buffer[] messages) {
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    int length = 0;
+    WriteQueue queue = new WriteQueue();
+    for (int i = 0; i < FRAMES; i++) {
+      for (Buffer message : messages) {
+        queue.add(message);
+      }
+      length += FrameEncoder.encodeMessages(queue).length();
+      queue.clear();
+    }
+    return result(System.nanoTime() - start, allocatedBytes() - allocated, length);
+  }
+
+  // Uses the frame length so the encoding can't be optimized away
+  private static String result(long time, long allocated, int length) {
+    if (length == 0) {
+      throw new IllegalStateException("Nothing encoded");
+    }
+    return String.format("%5d ns/frame %5d B/frame", time / FRAMES, allocated / FRAMES);
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(
+      Thread.currentThread().getId());
+  }
+}
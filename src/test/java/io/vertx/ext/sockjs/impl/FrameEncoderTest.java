@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * The encoder must produce exactly what {@link JsonCodec} produces for the same messages.
+ */
+public class FrameEncoderTest extends VertxTestBase {
+
+  @Test
+  public void testEncodeMessages() {
+    assertSameAsJsonCodec(buffer(""));
+    assertSameAsJsonCodec(buffer("hello"), buffer("world"));
+    assertSameAsJsonCodec(buffer("quote\" backslash\\ slash/ \b\f\n\r\t"));
+    assertSameAsJsonCodec(buffer("\u0000\u0001\u001f\u007f"));
+    assertSameAsJsonCodec(buffer("caf\u00e9 \u4e2d\u6587 \ud83d\ude00 \u2028\u2029 \ufeff"));
+    assertSameAsJsonCodec(buffer("</script><!--"), buffer(""), buffer("x"));
+  }
+
+  @Test
+  public void testEncodeMalformedUTF8() {
+    assertSameAsJsonCodec(Buffer.buffer(new byte[]{(byte) 0xff, 'a', (byte) 0xc3}));
+    assertSameAsJsonCodec(Buffer.buffer(new byte[]{(byte) 0xed, (byte) 0xa0, (byte) 0x80, 'x'}));
+  }
+
+  @Test
+  public void testEncodeRandomMessages() {
+    Random random = new Random(1234);
+    for (int i = 0; i < 1000; i++) {
+      byte[] bytes = new byte[random.nextInt(64)];
+      random.nextBytes(bytes);
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < 32; j++) {
+        sb.append((char) (random.nextBoolean() ? random.nextInt(0x80) : random.nextInt(0x10000)));
+      }
+      assertSameAsJsonCodec(Buffer.buffer(bytes), buffer(sb.toString()));
+    }
+  }
+
+  @Test
+  public void testEncodedMessage() {
+    Buffer msg = buffer("shared \"message\" caf\u00e9");
+    EncodedMessage encoded = new EncodedMessage(msg);
+    WriteQueue queue = new WriteQueue();
+    queue.add(msg);
+    assertEquals(FrameEncoder.encodeMessages(queue), encoded.frame());
+    // Escaped messages can be batched with the others
+    queue.add(buffer("other"));
+    WriteQueue mixed = new WriteQueue();
+    mixed.addEncoded(encoded.element());
+    mixed.add(buffer("other"));
+    assertEquals(FrameEncoder.encodeMessages(queue), FrameEncoder.encodeMessages(mixed));
+  }
+
+  @Test
+  public void testEscapeMask() {
+    // The mask must flag exactly the bytes the escape table doesn't leave alone, wherever they are in the word
+    long clean = 0x6161616161616161L;
+    for (int b = 0; b < 256; b++) {
+      boolean escaped = b >= 0x80 || !JsonCodec.encode(String.valueOf((char) b)).equals("\"" + (char) b + "\"");
+      for (int i = 0; i < 8; i++) {
+        int shift = 56 - 8 * i;
+        long word = (clean & ~(0xFFL << shift)) | ((long) b << shift);
+        assertEquals(escaped ? 0x80L << shift : 0L, FrameEncoder.escapeMask(word));
+      }
+    }
+  }
+
+  private static Buffer buffer(String str) {
+    return Buffer.buffer(str, "UTF-8");
+  }
+
+  private void assertSameAsJsonCodec(Buffer... messages) {
+    WriteQueue queue = new WriteQueue();
+    String[] strs = new String[messages.length];
+    for (int i = 0; i < messages.length; i++) {
+      queue.add(messages[i]);
+      strs[i] = messages[i].toString();
+    }
+    Buffer expected = Buffer.buffer("a" + JsonCodec.encode(strs), "UTF-8");
+    assertEquals(expected, FrameEncoder.encodeMessages(queue));
+  }
+}
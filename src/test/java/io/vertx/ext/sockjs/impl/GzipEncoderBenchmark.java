@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Counts the bytes an xhr_streaming response puts on the wire for a stream of event bus messages, compressed and
+ * uncompressed, with a chunk per frame and with the frames of a task gathered in one chunk. The bytes on the wire
+ * include the chunked encoding of each chunk, and the prelude, which is never compressed.
+ * It is not run with the tests, run its main method.
+ */
+public class GzipEncoderBenchmark {
+
+  private static final int FRAMES = 10_000;
+  private static final int FRAMES_PER_TASK = 10;
+  private static final String[] SYMBOLS = {"ACME", "INTC", "ORCL", "MSFT", "AAPL", "GOOG", "AMZN", "IBM", "RHT"};
+
+  public static void main(String[] args) throws Exception {
+    Buffer[] frames = new Buffer[FRAMES];
+    Random random = new Random(1234);
+    WriteQueue queue = new WriteQueue();
+    for (int i = 0; i < FRAMES; i++) {
+      String envelope = "{\"address\":\"prices\",\"body\":{\"symbol\":\"" + SYMBOLS[random.nextInt(SYMBOLS.length)] +
+        "\",\"price\":" + (100 + random.nextInt(10000) / 100.0) + ",\"time\":" + (1413571200000L + i * 37) + "}}";
+      queue.add(Buffer.buffer(envelope));
+      frames[i] = FrameEncoder.encodeMessages(queue).appendByte((byte) '\n');
+      queue.clear();
+    }
+    Buffer prelude = Buffer.buffer(new byte[2048]).appendByte((byte) '\n');
+    Vertx vertx = Vertx.vertx();
+    try {
+      Context context = vertx.getOrCreateContext();
+      for (long flushDelay : new long[]{-1, 0}) {
+        for (boolean gzip : new boolean[]{false, true}) {
+          // Warm up before measuring
+          run(vertx, context, prelude, frames, flushDelay, gzip);
+          System.out.println(run(vertx, context, prelude, frames, flushDelay, gzip));
+        }
+      }
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static String run(Vertx vertx, Context context, Buffer prelude, Buffer[] frames, long flushDelay,
+                            boolean gzip) throws Exception {
+    long[] wire = new long[2];
+    HttpServerResponse response = (HttpServerResponse) Proxy.newProxyInstance(
+      GzipEncoderBenchmark.class.getClassLoader(), new Class[]{HttpServerResponse.class}, (proxy, method, a) -> {
+        if ((method.getName().equals("write") || method.getName().equals("end")) && a != null) {
+          int length = ((Buffer) a[0]).length();
+          // Chunk size in hex and CRLF, then the chunk and CRLF
+          wire[0] += Integer.toHexString(length).length() + 2 + length + 2;
+          wire[1]++;
+        }
+        return method.getReturnType().isInstance(proxy) ? proxy : null;
+      });
+    long rawBytes = prelude.length();
+    for (Buffer frame : frames) {
+      rawBytes += frame.length();
+    }
+    CountDownLatch done = new CountDownLatch(1);
+    long start = System.nanoTime();
+    context.runOnContext(new Handler<Void>() {
+      final ChunkedWriter writer = new ChunkedWriter(vertx, response, flushDelay, gzip ? new GzipEncoder() : null);
+      int written;
+
+      @Override
+      public void handle(Void v) {
+        if (written == 0) {
+          writer.writePrelude(prelude);
+        }
+        for (int i = 0; i < FRAMES_PER_TASK && written < frames.length; i++) {
+          writer.write(frames[written++]);
+        }
+        if (written < frames.length) {
+          context.runOnContext(this);
+        } else {
+          // Lets the last flush run before ending the response
+          context.runOnContext(v2 -> {
+            writer.end();
+            done.countDown();
+          });
+        }
+      }
+    });
+    done.await();
+    long time = System.nanoTime() - start;
+    return String.format("%-20s %-12s: %6d chunks, %8d bytes on the wire for %8d bytes of frames, %5.1f%%, " +
+        "%5d ns/frame", flushDelay < 0 ? "chunk per frame" : "chunk per 10 frames", gzip ? "gzip" : "uncompressed",
+      wire[1], wire[0], rawBytes, 100.0 * wire[0] / rawBytes, time / frames.length);
+  }
+}
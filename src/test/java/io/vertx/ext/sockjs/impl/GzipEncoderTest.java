@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * The encoded pieces must form a valid gzip member, and each piece must be inflatable as soon as it's received.
+ * A chunked writer must end the member after the frames it's still holding, and must not use its encoder anymore
+ * once it has been released.
+ */
+public class GzipEncoderTest extends VertxTestBase {
+
+  @Test
+  public void testMember() throws Exception {
+    GzipEncoder encoder = new GzipEncoder();
+    Buffer wire = Buffer.buffer();
+    Buffer expected = Buffer.buffer();
+    Buffer prelude = Buffer.buffer(new byte[70000]);
+    wire.appendBuffer(encoder.store(prelude));
+    expected.appendBuffer(prelude);
+    for (int i = 0; i < 100; i++) {
+      Buffer frame = Buffer.buffer("a[\"{\\\"address\\\":\\\"news\\\",\\\"body\\\":" + i + "}\"]\n");
+      wire.appendBuffer(encoder.compress(frame));
+      expected.appendBuffer(frame);
+    }
+    wire.appendBuffer(encoder.finish());
+    assertEquals(expected, gunzip(wire));
+  }
+
+  @Test
+  public void testFlushedPieces() throws Exception {
+    GzipEncoder encoder = new GzipEncoder();
+    Inflater inflater = new Inflater(true);
+    byte[] out = new byte[4096];
+    Buffer prelude = Buffer.buffer("hhhhhhhh\n");
+    Buffer piece = encoder.store(prelude);
+    // Skip the gzip header
+    inflater.setInput(piece.getBytes(10, piece.length()));
+    assertEquals(prelude, Buffer.buffer().appendBytes(out, 0, inflater.inflate(out)));
+    for (int i = 0; i < 10; i++) {
+      Buffer frame = Buffer.buffer("a[\"message " + i + "\"]\n");
+      inflater.setInput(encoder.compress(frame).getBytes());
+      assertEquals(frame, Buffer.buffer().appendBytes(out, 0, inflater.inflate(out)));
+    }
+    inflater.end();
+    encoder.release();
+  }
+
+  @Test
+  public void testStoreAfterCompress() {
+    GzipEncoder encoder = new GzipEncoder();
+    encoder.compress(Buffer.buffer("o\n"));
+    try {
+      encoder.store(Buffer.buffer("h\n"));
+      fail();
+    } catch (IllegalStateException expected) {
+    } finally {
+      encoder.release();
+    }
+  }
+
+  @Test
+  public void testWriteAfterRelease() {
+    List<Buffer> written = new ArrayList<>();
+    ChunkedWriter writer = new ChunkedWriter(vertx, recordingResponse(written), -1, new GzipEncoder());
+    writer.write(Buffer.buffer("o\n"));
+    // The client went away
+    writer.release();
+    writer.write(Buffer.buffer("a[\"late\"]\n"));
+    writer.end();
+    assertEquals(1, written.size());
+  }
+
+  @Test
+  public void testEndCoalescingWriter() throws Exception {
+    for (long flushDelay : new long[]{0, 50}) {
+      List<Buffer> written = new CopyOnWriteArrayList<>();
+      HttpServerResponse response = recordingResponse(written);
+      CountDownLatch ended = new CountDownLatch(1);
+      vertx.runOnContext(v -> {
+        ChunkedWriter writer = new ChunkedWriter(vertx, response, flushDelay, new GzipEncoder());
+        writer.writePrelude(Buffer.buffer("prelude\n"));
+        // Still pending when the response is ended
+        writer.write(Buffer.buffer("a[\"hello\"]\n"));
+        writer.write(Buffer.buffer("a[\"world\"]\n"));
+        writer.end();
+        ended.countDown();
+      });
+      awaitLatch(ended);
+      Buffer wire = Buffer.buffer();
+      for (Buffer chunk : written) {
+        wire.appendBuffer(chunk);
+      }
+      assertEquals(2, written.size());
+      assertEquals(Buffer.buffer("prelude\na[\"hello\"]\na[\"world\"]\n"), gunzip(wire));
+    }
+  }
+
+  @Test
+  public void testPreludeAfterRelease() {
+    List<Buffer> written = new ArrayList<>();
+    ChunkedWriter writer = new ChunkedWriter(vertx, recordingResponse(written), -1, new GzipEncoder());
+    writer.release();
+    writer.writePrelude(Buffer.buffer("prelude\n"));
+    assertEquals(0, written.size());
+  }
+
+  @Test
+  public void testAcceptsGzip() {
+    assertTrue(BaseTransport.acceptsGzip("gzip"));
+    assertTrue(BaseTransport.acceptsGzip("deflate, GZIP;q=0.5"));
+    assertFalse(BaseTransport.acceptsGzip("deflate"));
+    assertFalse(BaseTransport.acceptsGzip("gzip;q=0"));
+    assertFalse(BaseTransport.acceptsGzip("identity, gzip; q=0.0"));
+  }
+
+  // Records the chunks written and the last one
+  private static HttpServerResponse recordingResponse(List<Buffer> written) {
+    return (HttpServerResponse) Proxy.newProxyInstance(GzipEncoderTest.class.getClassLoader(),
+      new Class[]{HttpServerResponse.class}, (proxy, method, args) -> {
+        if ((method.getName().equals("write") || method.getName().equals("end")) && args != null &&
+          args[0] instanceof Buffer) {
+          written.add((Buffer) args[0]);
+        }
+        return method.getReturnType().isInstance(proxy) ? proxy : null;
+      });
+  }
+
+  private static Buffer gunzip(Buffer wire) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(wire.getBytes()))) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] bytes = new byte[4096];
+      int n;
+      while ((n = in.read(bytes)) != -1) {
+        out.write(bytes, 0, n);
+      }
+      return Buffer.buffer(out.toByteArray());
+    }
+  }
+}
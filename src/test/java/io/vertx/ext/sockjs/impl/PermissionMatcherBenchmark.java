@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Times the permission check of the bridge for 10, 100 and 1000 rules, the compiled rules against the rules walked
+ * in order with the patterns compiled once, which is how the bridge used to check them. The compiled rules are
+ * timed with addresses that fit in their decision cache and with more addresses than it holds.
+ * It is not run with the tests, run its main method.
+ */
+public class PermissionMatcherBenchmark {
+
+  private static final int FEW_ADDRESSES = 500;
+  private static final int MANY_ADDRESSES = 20_000;
+  private static final int LOOKUPS = 200_000;
+  private static final int RUNS = 15;
+
+  public static void main(String[] args) {
+    for (int size : new int[]{10, 100, 1000}) {
+      List<JsonObject> rules = rules(size);
+      String[] few = addresses(size, FEW_ADDRESSES);
+      String[] many = addresses(size, MANY_ADDRESSES);
+      JsonObject body = new JsonObject().put("type", "public");
+      // Separate matchers, so the addresses missing the cache don't evict the others
+      PermissionMatcher matcher = new PermissionMatcher(rules);
+      PermissionMatcher missing = new PermissionMatcher(rules);
+      Map<String, Pattern> patterns = new HashMap<>();
+      // The best of several runs, the first ones warm up both paths
+      long walked = Long.MAX_VALUE;
+      long cached = Long.MAX_VALUE;
+      long uncached = Long.MAX_VALUE;
+      for (int i = 0; i < RUNS; i++) {
+        walked = Math.min(walked, walkAll(rules, patterns, few, body));
+        cached = Math.min(cached, matchAll(matcher, few, body));
+        uncached = Math.min(uncached, matchAll(missing, many, body));
+      }
+      System.out.printf("%4d rules: walked %7d ns/op, compiled %5d ns/op, compiled with cache misses %5d ns/op%n",
+        size, walked / LOOKUPS, cached / LOOKUPS, uncached / LOOKUPS);
+    }
+  }
+
+  // A mix of exact addresses, patterns and structures, like the rules of an application with many services
+  private static List<JsonObject> rules(int size) {
+    List<JsonObject> rules = new PermittedRules();
+    for (int i = 0; i < size; i++) {
+      JsonObject rule = new JsonObject();
+      switch (i % 4) {
+        case 0:
+        case 1:
+          rule.put("address", "service." + i);
+          break;
+        case 2:
+          rule.put("address_re", "service\\." + i + "\\.[a-z]+");
+          break;
+        default:
+          rule.put("address", "service." + i).put("match", new JsonObject().put("type", "public"));
+      }
+      if (i % 5 == 0) {
+        rule.put("requires_auth", true);
+      }
+      rules.add(rule);
+    }
+    return rules;
+  }
+
+  // Addresses permitted by the rules, and some no rule permits
+  private static String[] addresses(int size, int count) {
+    Random random = new Random(1234);
+    String[] addresses = new String[count];
+    for (int i = 0; i < addresses.length; i++) {
+      int service = random.nextInt(size + size / 4);
+      addresses[i] = service % 4 == 2 ? "service." + service + "." + (char) ('a' + i % 26) + i / 26 % 26 :
+        "service." + service;
+    }
+    return addresses;
+  }
+
+  private static long walkAll(List<JsonObject> rules, Map<String, Pattern> patterns, String[] addresses,
+                              JsonObject body) {
+    long start = System.nanoTime();
+    int matches = 0;
+    for (int i = 0; i < LOOKUPS; i++) {
+      matches += walk(rules, patterns, addresses[i % addresses.length], body) ? 1 : 0;
+    }
+    return check(System.nanoTime() - start, matches);
+  }
+
+  private static boolean walk(List<JsonObject> rules, Map<String, Pattern> patterns, String address, JsonObject body) {
+    for (JsonObject rule : rules) {
+      String matchAddress = rule.getString("address");
+      String matchRegex = matchAddress == null ? rule.getString("address_re") : null;
+      boolean addressOK = matchAddress != null ? matchAddress.equals(address) :
+        matchRegex == null || patterns.computeIfAbsent(matchRegex, Pattern::compile).matcher(address).matches();
+      if (addressOK && structureMatches(rule.getJsonObject("match"), body)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean structureMatches(JsonObject match, JsonObject body) {
+    if (match == null) {
+      return true;
+    }
+    for (String fieldName : match.fieldNames()) {
+      if (!match.getValue(fieldName).equals(body.getValue(fieldName))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long matchAll(PermissionMatcher matcher, String[] addresses, JsonObject body) {
+    long start = System.nanoTime();
+    int matches = 0;
+    for (int i = 0; i < LOOKUPS; i++) {
+      matches += matcher.match(addresses[i % addresses.length], body).doesMatch ? 1 : 0;
+    }
+    return check(System.nanoTime() - start, matches);
+  }
+
+  // Uses the result so the lookups can't be optimized away
+  private static long check(long time, int matches) {
+    if (matches == 0) {
+      throw new IllegalStateException("No address permitted");
+    }
+    return time;
+  }
+}
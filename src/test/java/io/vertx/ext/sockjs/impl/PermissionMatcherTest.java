@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sockjs.BridgeOptions;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The compiled rules must give the decision the rules give when walked in order.
+ */
+public class PermissionMatcherTest extends VertxTestBase {
+
+  private static final String[] ADDRESSES = {"news", "news.uk", "news.fr", "orders", "orders.1", "chat"};
+  private static final String[] PATTERNS = {"news\\..+", "orders(\\.[0-9]+)?", ".*s", "(c|d)hat", "(?<p>a)\\k<p>",
+    "news\\.u?k", "ne+ws", "orders|chat"};
+
+  @Test
+  public void testFirstRuleWins() {
+    PermissionMatcher matcher = new PermissionMatcher(Arrays.asList(
+      new JsonObject().put("address_re", "news\\..+").put("requires_auth", true),
+      new JsonObject().put("address", "news.uk"),
+      new JsonObject().put("match", new JsonObject().put("type", "public"))));
+    assertTrue(matcher.match("news.uk", null).requiresAuth);
+    assertFalse(matcher.match("chat", new JsonObject().put("type", "public")).requiresAuth);
+    assertFalse(matcher.match("chat", new JsonObject().put("type", "private")).doesMatch);
+    assertFalse(new PermissionMatcher(Collections.emptyList()).match("news", null).doesMatch);
+  }
+
+  @Test
+  public void testCachedDecisions() {
+    PermissionMatcher matcher = new PermissionMatcher(Arrays.asList(
+      new JsonObject().put("address", "orders").put("match", new JsonObject().put("type", "public")),
+      new JsonObject().put("address_re", "orders|news").put("requires_auth", true)));
+    for (int i = 0; i < 2; i++) {
+      assertTrue(matcher.match("news", null).requiresAuth);
+      assertFalse(matcher.match("orders", new JsonObject().put("type", "public")).requiresAuth);
+      assertTrue(matcher.match("orders", new JsonObject().put("type", "private")).requiresAuth);
+      assertFalse(matcher.match("chat", null).doesMatch);
+    }
+  }
+
+  @Test
+  public void testRulesLive() {
+    List<JsonObject> rules = new BridgeOptions().addInboundPermitted(new JsonObject().put("address", "news"))
+      .getInboundPermitteds();
+    PermissionMatcher matcher = new PermissionMatcher(rules);
+    assertFalse(matcher.match("news", null).requiresAuth);
+    assertFalse(matcher.match("orders", null).doesMatch);
+    // The decisions cached for the previous rules are dropped
+    rules.add(0, new JsonObject().put("address", "news").put("requires_auth", true));
+    rules.add(new JsonObject().put("address", "orders"));
+    assertTrue(matcher.match("news", null).requiresAuth);
+    assertTrue(matcher.match("orders", null).doesMatch);
+    // A rule changed in place applies once it is set again
+    JsonObject rule = rules.get(0);
+    rule.put("requires_auth", false);
+    assertTrue(matcher.match("news", null).requiresAuth);
+    rules.set(0, rule);
+    assertFalse(matcher.match("news", null).requiresAuth);
+    rules.clear();
+    assertFalse(matcher.match("news", null).doesMatch);
+    assertFalse(matcher.match("orders", null).doesMatch);
+  }
+
+  @Test
+  public void testManyAddresses() {
+    PermissionMatcher matcher = new PermissionMatcher(Arrays.asList(
+      new JsonObject().put("address_re", "news\\.[0-9]*[02468]").put("requires_auth", true)));
+    // More addresses than the decision cache holds
+    for (int i = 0; i < 2; i++) {
+      for (int j = 0; j < 5000; j++) {
+        PermissionMatcher.Match match = matcher.match("news." + j, null);
+        assertEquals(j % 2 == 0, match.doesMatch);
+        assertEquals(j % 2 == 0, match.requiresAuth);
+      }
+    }
+  }
+
+  @Test
+  public void testPatternsWithoutLiteralPrefix() {
+    PermissionMatcher matcher = new PermissionMatcher(Arrays.asList(
+      new JsonObject().put("address_re", "(?x) news \\. [a-z]+  # a comment"),
+      new JsonObject().put("address_re", "\\Qa.b"),
+      new JsonObject().put("address_re", "orders\\.[0-9]+"),
+      new JsonObject().put("address_re", "chat|talk").put("requires_auth", true)));
+    assertTrue(matcher.match("news.uk", null).doesMatch);
+    assertTrue(matcher.match("a.b", null).doesMatch);
+    assertFalse(matcher.match("axb", null).doesMatch);
+    assertTrue(matcher.match("orders.1", null).doesMatch);
+    assertFalse(matcher.match("orders", null).doesMatch);
+    assertTrue(matcher.match("talk", null).requiresAuth);
+    assertFalse(matcher.match("other", null).doesMatch);
+  }
+
+  @Test
+  public void testLiteralPrefix() {
+    assertEquals("news.", PermissionMatcher.literalPrefix("news\\.[a-z]+"));
+    assertEquals("news.uk", PermissionMatcher.literalPrefix("news\\.uk"));
+    assertEquals("new", PermissionMatcher.literalPrefix("news?"));
+    assertEquals("ne", PermissionMatcher.literalPrefix("ne+ws"));
+    assertEquals("news", PermissionMatcher.literalPrefix("news(\\.uk|\\.fr)"));
+    assertEquals("", PermissionMatcher.literalPrefix("news|orders"));
+    assertEquals("a", PermissionMatcher.literalPrefix("a[|]"));
+    assertEquals("", PermissionMatcher.literalPrefix("\\Qnews"));
+    assertEquals("", PermissionMatcher.literalPrefix("\\d+"));
+    assertEquals("", PermissionMatcher.literalPrefix(".*s"));
+    assertEquals("", PermissionMatcher.literalPrefix("(?i)news"));
+  }
+
+  @Test
+  public void testRandomRules() {
+    Random random = new Random(1234);
+    for (int i = 0; i < 500; i++) {
+      List<JsonObject> rules = new ArrayList<>();
+      int count = random.nextInt(12);
+      for (int j = 0; j < count; j++) {
+        JsonObject rule = new JsonObject();
+        switch (random.nextInt(3)) {
+          case 0:
+            rule.put("address", ADDRESSES[random.nextInt(ADDRESSES.length)]);
+            break;
+          case 1:
+            rule.put("address_re", PATTERNS[random.nextInt(PATTERNS.length)]);
+            break;
+        }
+        if (random.nextBoolean()) {
+          rule.put("match", randomBody(random));
+        }
+        if (random.nextBoolean()) {
+          rule.put("requires_auth", random.nextBoolean());
+        }
+        rules.add(rule);
+      }
+      PermissionMatcher matcher = new PermissionMatcher(rules);
+      for (int j = 0; j < 20; j++) {
+        String address = random.nextInt(5) == 0 ? "aa" : ADDRESSES[random.nextInt(ADDRESSES.length)];
+        Object body = random.nextInt(4) == 0 ? "text" : randomBody(random);
+        PermissionMatcher.Match expected = walk(rules, address, body);
+        PermissionMatcher.Match actual = matcher.match(address, body);
+        assertEquals(expected.doesMatch, actual.doesMatch);
+        assertEquals(expected.requiresAuth, actual.requiresAuth);
+      }
+    }
+  }
+
+  private static JsonObject randomBody(Random random) {
+    JsonObject body = new JsonObject();
+    if (random.nextBoolean()) {
+      body.put("type", random.nextBoolean() ? "public" : "private");
+    }
+    if (random.nextBoolean()) {
+      body.put("user", new JsonObject().put("role", random.nextBoolean() ? "admin" : "guest"));
+    }
+    return body;
+  }
+
+  // The rules walked in order, the way the bridge used to check them
+  private static PermissionMatcher.Match walk(List<JsonObject> rules, String address, Object body) {
+    for (JsonObject rule : rules) {
+      String matchAddress = rule.getString("address");
+      String matchRegex = matchAddress == null ? rule.getString("address_re") : null;
+      boolean addressOK = matchAddress != null ? matchAddress.equals(address) :
+        matchRegex == null || address.matches(matchRegex);
+      if (addressOK && structureMatches(rule.getJsonObject("match"), body)) {
+        Boolean b = rule.getBoolean("requires_auth");
+        return b != null && b ? PermissionMatcher.MATCH_REQUIRES_AUTH : PermissionMatcher.MATCH;
+      }
+    }
+    return PermissionMatcher.NO_MATCH;
+  }
+
+  private static boolean structureMatches(JsonObject match, Object bodyObject) {
+    if (match == null) return true;
+    if (!(bodyObject instanceof JsonObject)) return false;
+    JsonObject body = (JsonObject) bodyObject;
+    for (String fieldName : match.fieldNames()) {
+      Object mv = match.getValue(fieldName);
+      Object bv = body.getValue(fieldName);
+      if (mv instanceof JsonObject) {
+        if (!structureMatches((JsonObject) mv, bv)) {
+          return false;
+        }
+      } else if (!mv.equals(bv)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Apache License v2.0 is available at
+ * http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sessions driven by their own timers on a context, with a listener recording what is sent.
+ */
+public class SessionTest extends VertxTestBase {
+
+  private static final long HEARTBEAT_PERIOD = 400;
+
+  private LocalMap<String, Session> sessions;
+  private Context context;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    sessions = vertx.sharedData().getLocalMap("_vertx.sockjssessions");
+    context = vertx.getOrCreateContext();
+  }
+
+  @Test
+  public void testIdleSessionHeartbeats() {
+    AtomicInteger heartbeats = new AtomicInteger();
+    context.runOnContext(v -> {
+      Session session = new Session(vertx, sessions, HEARTBEAT_PERIOD, sock -> {});
+      session.register(new TestListener() {
+        @Override
+        public void sendHeartbeat() {
+          heartbeats.incrementAndGet();
+        }
+      });
+      vertx.setTimer(HEARTBEAT_PERIOD * 5 + HEARTBEAT_PERIOD / 4, id -> {
+        // One heartbeat per period, the sweep runs every half period but the session isn't silent for that long
+        int count = heartbeats.get();
+        assertTrue("Got " + count + " heartbeats", count >= 3 && count <= 5);
+        session.shutdown();
+        testComplete();
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testNoHeartbeatWhileWriting() {
+    AtomicInteger heartbeats = new AtomicInteger();
+    context.runOnContext(v -> {
+      Session session = new Session(vertx, sessions, HEARTBEAT_PERIOD, sock -> {});
+      session.register(new TestListener() {
+        @Override
+        public void sendHeartbeat() {
+          heartbeats.incrementAndGet();
+        }
+      });
+      long timerID = vertx.setPeriodic(HEARTBEAT_PERIOD / 4, id -> session.write(Buffer.buffer("hello")));
+      vertx.setTimer(HEARTBEAT_PERIOD * 3, id -> {
+        vertx.cancelTimer(timerID);
+        assertEquals(0, heartbeats.get());
+        session.shutdown();
+        testComplete();
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testWriteQueueWatermarks() {
+    context.runOnContext(v -> {
+      Session session = new Session(vertx, sessions, HEARTBEAT_PERIOD, sock -> {});
+      session.setWriteQueueMaxSize(10);
+      AtomicInteger drained = new AtomicInteger();
+      session.drainHandler(v2 -> drained.incrementAndGet());
+      // Queued until a listener registers
+      session.write(Buffer.buffer("hello"));
+      assertFalse(session.writeQueueFull());
+      session.write(Buffer.buffer("world"));
+      assertTrue(session.writeQueueFull());
+      assertEquals(0, drained.get());
+      StringBuilder sent = new StringBuilder();
+      session.register(new TestListener() {
+        @Override
+        public void sendFrame(Buffer frame) {
+          sent.append(frame.toString());
+        }
+      });
+      assertEquals("oa[\"hello\",\"world\"]", sent.toString());
+      assertFalse(session.writeQueueFull());
+      assertEquals(1, drained.get());
+      // The drain handler is only called once
+      session.write(Buffer.buffer("again"));
+      assertEquals(1, drained.get());
+      session.shutdown();
+      testComplete();
+    });
+    await();
+  }
+
+  @Test
+  public void testHandedOffWritesCountTowardsFull() throws Exception {
+    CountDownLatch created = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Session[] session = new Session[1];
+    context.runOnContext(v -> {
+      session[0] = new Session(vertx, sessions, HEARTBEAT_PERIOD, sock -> {});
+      session[0].setWriteQueueMaxSize(10);
+      created.countDown();
+      // Keep the context busy so the writes below stay handed off
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    awaitLatch(created);
+    session[0].write(Buffer.buffer("hello world"));
+    assertTrue(session[0].writeQueueFull());
+    release.countDown();
+    context.runOnContext(v -> {
+      // Now queued by the session, still full as there is no listener
+      assertTrue(session[0].writeQueueFull());
+      session[0].shutdown();
+      testComplete();
+    });
+    await();
+  }
+
+  @Test
+  public void testPollHoldLatency() {
+    long pollHoldWindow = 20;
+    context.runOnContext(v -> {
+      Session session = new Session(vertx, sessions, "session1", -1, HEARTBEAT_PERIOD, pollHoldWindow, sock -> {});
+      long[] start = new long[1];
+      session.register(new TestListener() {
+        @Override
+        public void sendFrame(Buffer frame) {
+          if (frame.toString().equals("o")) {
+            return;
+          }
+          // The burst is sent in one frame once the window is over, not rounded up to the session wheel's tick
+          long elapsed = System.currentTimeMillis() - start[0];
+          assertEquals("a[\"hello\",\"world\"]", frame.toString());
+          assertTrue("Held for " + elapsed + " ms", elapsed >= pollHoldWindow && elapsed < pollHoldWindow + 15);
+          session.shutdown();
+          testComplete();
+        }
+
+        @Override
+        public boolean isPolling() {
+          return true;
+        }
+      });
+      start[0] = System.currentTimeMillis();
+      session.write(Buffer.buffer("hello"));
+      session.write(Buffer.buffer("world"));
+    });
+    await();
+  }
+
+  static class TestListener implements TransportListener {
+
+    @Override
+    public void sendFrame(Buffer frame) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void sessionClosed() {
+    }
+  }
+}
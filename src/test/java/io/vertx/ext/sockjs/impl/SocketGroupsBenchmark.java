@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.sockjs.SockJSSocket;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Times publishing to a group of 10k, 100k and 1M sockets spread over four contexts. The groups run one task per
+ * context and write to its sockets directly. They are compared with one task per socket, which is the least a
+ * message per socket on the event bus costs: the event bus runs the handler of each message on its context.
+ * The allocated bytes are those of all the threads.
+ * It is not run with the tests, run its main method.
+ */
+public class SocketGroupsBenchmark {
+
+  private static final int CONTEXTS = 4;
+  private static final int DELIVERIES = 10_000_000;
+
+  public static void main(String[] args) throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      for (int memberships : new int[]{10_000, 100_000, 1_000_000}) {
+        run(vertx, memberships);
+      }
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static void run(Vertx vertx, int memberships) throws Exception {
+    List<Context> contexts = new ArrayList<>();
+    for (int i = 0; i < CONTEXTS; i++) {
+      contexts.add(vertx.getOrCreateContext());
+    }
+    SocketGroups groups = new SocketGroups();
+    List<CountingSocket> socks = new ArrayList<>(memberships);
+    for (Context context : contexts) {
+      onContext(context, () -> {
+        for (int i = 0; i < memberships / CONTEXTS; i++) {
+          CountingSocket sock = new CountingSocket(vertx);
+          groups.join("group", sock);
+          socks.add(sock);
+        }
+      });
+    }
+    int messages = Math.max(10, DELIVERIES / memberships);
+    // Warm up both paths before timing them
+    for (int i = 0; i < 3; i++) {
+      groups(groups, socks, contexts, messages);
+      socketTasks(socks, contexts, messages);
+    }
+    System.out.printf("%7d memberships: groups %s, task per socket %s%n", memberships,
+      groups(groups, socks, contexts, messages), socketTasks(socks, contexts, messages));
+    for (CountingSocket sock : socks) {
+      sock.context().runOnContext(v -> sock.close());
+    }
+    for (Context context : contexts) {
+      onContext(context, () -> {});
+    }
+  }
+
+  private static String groups(SocketGroups groups, List<CountingSocket> socks, List<Context> contexts, int messages)
+    throws Exception {
+    Buffer message = Buffer.buffer("{\"type\":\"update\",\"id\":1234,\"value\":\"hello\"}");
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < messages; i++) {
+      groups.publish("group", message);
+      // The tasks of a context run in order, so the message has been written once this has run
+      for (Context context : contexts) {
+        onContext(context, () -> {});
+      }
+    }
+    return result(System.nanoTime() - start, allocatedBytes() - allocated, (long) messages * socks.size());
+  }
+
+  private static String socketTasks(List<CountingSocket> socks, List<Context> contexts, int messages)
+    throws Exception {
+    Buffer message = Buffer.buffer("{\"type\":\"update\",\"id\":1234,\"value\":\"hello\"}");
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < messages; i++) {
+      for (CountingSocket sock : socks) {
+        sock.context().runOnContext(v -> sock.write(message));
+      }
+      for (Context context : contexts) {
+        onContext(context, () -> {});
+      }
+    }
+    return result(System.nanoTime() - start, allocatedBytes() - allocated, (long) messages * socks.size());
+  }
+
+  private static String result(long time, long allocated, long deliveries) {
+    return String.format("%4d ns/delivery %4d B/delivery", time / deliveries, allocated / deliveries);
+  }
+
+  private static void onContext(Context context, Runnable task) throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    context.runOnContext(v -> {
+      task.run();
+      latch.countDown();
+    });
+    latch.await();
+  }
+
+  private static long allocatedBytes() {
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long allocated = 0;
+    for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+      allocated += Math.max(bytes, 0);
+    }
+    return allocated;
+  }
+
+  private static class CountingSocket extends SocketGroupsTest.TestSocket {
+
+    int written;
+
+    CountingSocket(Vertx vertx) {
+      super(vertx);
+    }
+
+    @Override
+    public SockJSSocket write(Buffer data) {
+      written++;
+      return this;
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Apache License v2.0 is available at
+ * http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.sockjs.SockJSSocket;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Groups of sockets owned by different contexts, with sockets recording what is written to them.
+ */
+public class SocketGroupsTest extends VertxTestBase {
+
+  private SocketGroups groups;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    groups = new SocketGroups();
+  }
+
+  @Test
+  public void testJoinAfterRelease() throws Exception {
+    Context context = vertx.getOrCreateContext();
+    TestSocket sock = createSocket(context);
+    onContext(context, () -> {
+      sock.close();
+      groups.join("group", sock);
+    });
+    groups.publish("group", Buffer.buffer("hello"));
+    // Tasks run in order on the context, so the publish has been handled once this has run
+    onContext(context, () -> {});
+    assertEquals(0, sock.written.size());
+  }
+
+  @Test
+  public void testHandedOffJoinAfterRelease() throws Exception {
+    Context context = vertx.getOrCreateContext();
+    TestSocket sock = createSocket(context);
+    CountDownLatch release = new CountDownLatch(1);
+    context.runOnContext(v -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      sock.close();
+    });
+    // Handed to the context, where it runs once the socket is closed
+    groups.join("group", sock);
+    release.countDown();
+    groups.publish("group", Buffer.buffer("hello"));
+    onContext(context, () -> {});
+    assertEquals(0, sock.written.size());
+  }
+
+  @Test
+  public void testRejoinAfterPartitionRemoved() throws Exception {
+    Context context = vertx.getOrCreateContext();
+    TestSocket sock = createSocket(context);
+    onContext(context, () -> {
+      groups.join("group", sock);
+      // The partition of the context is empty and dropped
+      groups.leave("group", sock);
+      groups.publish("group", Buffer.buffer("hello"));
+      groups.join("group", sock);
+      groups.publish("group", Buffer.buffer("world"));
+    });
+    onContext(context, () -> {});
+    assertEquals(1, sock.written.size());
+    assertEquals("world", sock.written.get(0));
+  }
+
+  @Test
+  public void testPartitionRemovedDuringPublish() throws Exception {
+    Context context = vertx.getOrCreateContext();
+    Context churnContext = vertx.getOrCreateContext();
+    TestSocket sock = createSocket(context);
+    TestSocket churned = createSocket(churnContext);
+    onContext(context, () -> groups.join("group", sock));
+    // The partition of the other context is added and dropped while the messages are published
+    AtomicBoolean publishing = new AtomicBoolean(true);
+    CountDownLatch churnDone = new CountDownLatch(1);
+    churnContext.runOnContext(new Handler<Void>() {
+      @Override
+      public void handle(Void v) {
+        if (publishing.get()) {
+          groups.join("group", churned);
+          groups.leave("group", churned);
+          churnContext.runOnContext(this);
+        } else {
+          churnDone.countDown();
+        }
+      }
+    });
+    int count = 10000;
+    for (int i = 0; i < count; i++) {
+      groups.publish("group", Buffer.buffer(String.valueOf(i)));
+    }
+    publishing.set(false);
+    awaitLatch(churnDone);
+    onContext(context, () -> {});
+    assertEquals(count, sock.written.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals(String.valueOf(i), sock.written.get(i));
+    }
+  }
+
+  @Test
+  public void testPublishAcrossContexts() throws Exception {
+    Context context1 = vertx.getOrCreateContext();
+    Context context2 = vertx.getOrCreateContext();
+    TestSocket sock1 = createSocket(context1);
+    TestSocket sock2 = createSocket(context2);
+    TestSocket other = createSocket(context2);
+    onContext(context1, () -> groups.join("group", sock1));
+    onContext(context2, () -> {
+      groups.join("group", sock2);
+      groups.join("other", other);
+    });
+    // From another thread and from the context of one of the sockets
+    groups.publish("group", Buffer.buffer("hello"));
+    onContext(context1, () -> groups.publish("group", Buffer.buffer("world")));
+    onContext(context1, () -> {});
+    onContext(context2, () -> {});
+    for (TestSocket sock : new TestSocket[]{sock1, sock2}) {
+      assertEquals(2, sock.written.size());
+      assertEquals("hello", sock.written.get(0));
+      assertEquals("world", sock.written.get(1));
+      assertFalse(sock.writtenOffContext);
+    }
+    assertEquals(0, other.written.size());
+  }
+
+  @Test
+  public void testCloseLeavesAllGroups() throws Exception {
+    Context context = vertx.getOrCreateContext();
+    TestSocket sock = createSocket(context);
+    onContext(context, () -> {
+      groups.join("group1", sock);
+      groups.join("group2", sock);
+      sock.close();
+      groups.publish("group1", Buffer.buffer("hello"));
+      groups.publish("group2", Buffer.buffer("hello"));
+    });
+    onContext(context, () -> {});
+    assertEquals(0, sock.written.size());
+  }
+
+  private TestSocket createSocket(Context context) throws Exception {
+    TestSocket[] sock = new TestSocket[1];
+    onContext(context, () -> sock[0] = new TestSocket(vertx));
+    return sock[0];
+  }
+
+  private void onContext(Context context, Runnable task) throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    context.runOnContext(v -> {
+      task.run();
+      latch.countDown();
+    });
+    awaitLatch(latch);
+  }
+
+  static class TestSocket extends SockJSSocketBase {
+
+    final List<String> written = new CopyOnWriteArrayList<>();
+    volatile boolean writtenOffContext;
+
+    TestSocket(Vertx vertx) {
+      super(vertx);
+    }
+
+    @Override
+    public SockJSSocket write(Buffer data) {
+      if (!isOnContext()) {
+        writtenOffContext = true;
+      }
+      written.add(data.toString());
+      return this;
+    }
+
+    @Override
+    public SockJSSocket exceptionHandler(Handler<Throwable> handler) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket handler(Handler<Buffer> handler) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket pause() {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket resume() {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket endHandler(Handler<Void> endHandler) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket setWriteQueueMaxSize(int maxSize) {
+      return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+      return false;
+    }
+
+    @Override
+    public SockJSSocket drainHandler(Handler<Void> handler) {
+      return this;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+      return null;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+      return null;
+    }
+
+    @Override
+    public MultiMap headers() {
+      return null;
+    }
+
+    @Override
+    public String uri() {
+      return null;
+    }
+  }
+}
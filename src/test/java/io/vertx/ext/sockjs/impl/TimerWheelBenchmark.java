@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Times re-arming and cancelling session deadlines with 10k, 100k and 200k sessions, like a reconnect storm does:
+ * each operation cancels the timeout of a session and schedules it again. The timer wheel is compared with a
+ * Vert.x timer per session, which is how sessions used to schedule their deadlines. Both run on an event loop
+ * context, the allocated bytes per operation are those of that thread.
+ * It is not run with the tests, run its main method.
+ */
+public class TimerWheelBenchmark {
+
+  private static final long SESSION_TIMEOUT = 5000;
+  private static final int OPERATIONS = 2_000_000;
+
+  public static void main(String[] args) throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      for (int sessions : new int[]{10_000, 100_000, 200_000}) {
+        String[] result = new String[1];
+        CountDownLatch latch = new CountDownLatch(1);
+        vertx.runOnContext(v -> {
+          // Warm up both paths before timing them
+          for (int i = 0; i < 3; i++) {
+            wheel(vertx, sessions);
+            vertxTimers(vertx, sessions);
+          }
+          result[0] = String.format("%6d sessions: wheel %s, Vert.x timers %s", sessions, wheel(vertx, sessions),
+            vertxTimers(vertx, sessions));
+          latch.countDown();
+        });
+        latch.await();
+        System.out.println(result[0]);
+      }
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static String wheel(Vertx vertx, int sessions) {
+    TimerWheel wheel = new TimerWheel(vertx, 100, 512);
+    TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[sessions];
+    Handler<Void> handler = v -> {};
+    for (int i = 0; i < sessions; i++) {
+      timeouts[i] = new TimerWheel.Timeout(handler);
+      wheel.schedule(timeouts[i], SESSION_TIMEOUT);
+    }
+    Random random = new Random(1234);
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < OPERATIONS; i++) {
+      TimerWheel.Timeout timeout = timeouts[random.nextInt(sessions)];
+      wheel.cancel(timeout);
+      wheel.schedule(timeout, SESSION_TIMEOUT);
+    }
+    String result = result(System.nanoTime() - start, allocatedBytes() - allocated);
+    for (TimerWheel.Timeout timeout : timeouts) {
+      wheel.cancel(timeout);
+    }
+    return result;
+  }
+
+  private static String vertxTimers(Vertx vertx, int sessions) {
+    long[] timerIDs = new long[sessions];
+    Handler<Long> handler = id -> {};
+    for (int i = 0; i < sessions; i++) {
+      timerIDs[i] = vertx.setTimer(SESSION_TIMEOUT, handler);
+    }
+    Random random = new Random(1234);
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < OPERATIONS; i++) {
+      int session = random.nextInt(sessions);
+      vertx.cancelTimer(timerIDs[session]);
+      timerIDs[session] = vertx.setTimer(SESSION_TIMEOUT, handler);
+    }
+    String result = result(System.nanoTime() - start, allocatedBytes() - allocated);
+    for (long timerID : timerIDs) {
+      vertx.cancelTimer(timerID);
+    }
+    return result;
+  }
+
+  private static String result(long time, long allocated) {
+    return String.format("%4d ns/op %4d B/op", time / OPERATIONS, allocated / OPERATIONS);
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(
+      Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Apache License v2.0 is available at
+ * http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The wheel is driven manually with a tick large enough for its own periodic timer never to fire during a test.
+ */
+public class TimerWheelTest extends VertxTestBase {
+
+  private static final long TICK = 60 * 60 * 1000;
+
+  private TimerWheel wheel;
+  private long now;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    wheel = new TimerWheel(vertx, TICK, 8);
+    now = System.currentTimeMillis();
+  }
+
+  @Test
+  public void testExpiresAfterDeadline() {
+    AtomicInteger count = new AtomicInteger();
+    TimerWheel.Timeout timeout = new TimerWheel.Timeout(v -> count.incrementAndGet());
+    wheel.schedule(timeout, 3 * TICK, now);
+    wheel.expireTimeouts(now + 2 * TICK);
+    assertEquals(0, count.get());
+    wheel.expireTimeouts(now + 4 * TICK);
+    assertEquals(1, count.get());
+    wheel.expireTimeouts(now + 20 * TICK);
+    assertEquals(1, count.get());
+  }
+
+  @Test
+  public void testReschedule() {
+    AtomicInteger count = new AtomicInteger();
+    TimerWheel.Timeout timeout = new TimerWheel.Timeout(v -> count.incrementAndGet());
+    wheel.schedule(timeout, 2 * TICK, now);
+    wheel.schedule(timeout, 5 * TICK, now);
+    wheel.expireTimeouts(now + 3 * TICK);
+    assertEquals(0, count.get());
+    wheel.expireTimeouts(now + 6 * TICK);
+    assertEquals(1, count.get());
+  }
+
+  @Test
+  public void testCancel() {
+    AtomicInteger count = new AtomicInteger();
+    TimerWheel.Timeout timeout = new TimerWheel.Timeout(v -> count.incrementAndGet());
+    wheel.schedule(timeout, 2 * TICK, now);
+    wheel.cancel(timeout);
+    wheel.expireTimeouts(now + 3 * TICK);
+    assertEquals(0, count.get());
+  }
+
+  @Test
+  public void testDeadlineBeyondOneRotation() {
+    AtomicInteger count = new AtomicInteger();
+    TimerWheel.Timeout timeout = new TimerWheel.Timeout(v -> count.incrementAndGet());
+    wheel.schedule(timeout, 20 * TICK, now);
+    for (int i = 1; i < 20; i++) {
+      wheel.expireTimeouts(now + i * TICK);
+    }
+    assertEquals(0, count.get());
+    wheel.expireTimeouts(now + 21 * TICK);
+    assertEquals(1, count.get());
+  }
+
+  @Test
+  public void testTicksOnlyWhileScheduled() {
+    TimerWheel.Timeout timeout = new TimerWheel.Timeout(v -> {});
+    assertFalse(wheel.isTicking());
+    wheel.schedule(timeout, TICK, now);
+    assertTrue(wheel.isTicking());
+    wheel.expireTimeouts(now + 2 * TICK);
+    assertFalse(wheel.isTicking());
+    wheel.schedule(timeout, TICK, now);
+    wheel.cancel(timeout);
+    wheel.expireTimeouts(now + 2 * TICK);
+    assertFalse(wheel.isTicking());
+  }
+
+  @Test
+  public void testHandlerCanCancelAnotherExpiredTimeout() {
+    AtomicInteger count = new AtomicInteger();
+    TimerWheel.Timeout second = new TimerWheel.Timeout(v -> count.incrementAndGet());
+    TimerWheel.Timeout first = new TimerWheel.Timeout(v -> {
+      count.incrementAndGet();
+      wheel.cancel(second);
+    });
+    // Scheduled last so it is at the head of the slot and expires first
+    wheel.schedule(second, TICK, now);
+    wheel.schedule(first, TICK, now);
+    wheel.expireTimeouts(now + 2 * TICK);
+    assertEquals(1, count.get());
+  }
+
+  @Test
+  public void testOneWheelPerContext() {
+    Context context = vertx.getOrCreateContext();
+    Context other = vertx.getOrCreateContext();
+    assertNotSame(context, other);
+    TimerWheel wheel = ContextTimers.forContext(vertx, context).wheel();
+    assertSame(wheel, ContextTimers.forContext(vertx, context).wheel());
+    assertNotSame(wheel, ContextTimers.forContext(vertx, other).wheel());
+  }
+
+  @Test
+  public void testExpiresOnItsContext() {
+    Context context = vertx.getOrCreateContext();
+    context.runOnContext(v -> {
+      Thread thread = Thread.currentThread();
+      TimerWheel wheel = ContextTimers.forContext(vertx, context).wheel();
+      wheel.schedule(new TimerWheel.Timeout(v2 -> {
+        assertSame(thread, Thread.currentThread());
+        testComplete();
+      }), 1);
+    });
+    await();
+  }
+}
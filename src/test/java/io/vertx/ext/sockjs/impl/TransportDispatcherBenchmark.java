@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2011-2013 The original author or authors
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *     The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times routing session requests with the transport dispatcher and with the regex routes of the
+ * {@link RouteMatcher}, which is how they used to be routed, for a server with 1 and with 4 apps.
+ * The route matcher has the routes an app used to install, in the same order. The requests are spread over
+ * the apps and transports, they only have a method, a path and parameters.
+ * It is not run with the tests, run its main method.
+ */
+public class TransportDispatcherBenchmark {
+
+  private static final String SESSION_PATH_RE = "\\/[^\\/\\.]+\\/([^\\/\\.]+)\\/";
+  private static final int REQUESTS = 5_000_000;
+
+  public static void main(String[] args) {
+    for (int apps : new int[]{1, 4}) {
+      TransportDispatcher dispatcher = new TransportDispatcher();
+      RouteMatcher rm = new RouteMatcherImpl();
+      Handler<HttpServerRequest> handler = req -> {};
+      for (int i = 0; i < apps; i++) {
+        String prefix = "/app" + i;
+        for (String[] route : TransportDispatcherTest.TRANSPORT_ROUTES) {
+          dispatcher.route(prefix, route[0], HttpMethod.valueOf(route[1]), handler);
+        }
+        dispatcher.routeAll(prefix, "websocket", handler);
+        addRegexRoutes(rm, prefix, handler);
+      }
+      rm.noMatch(req -> {
+        throw new IllegalStateException("Not routed: " + req.path());
+      });
+      Map<String, String> params = new HashMap<>();
+      HttpServerRequest[] requests = new HttpServerRequest[1024];
+      Random random = new Random(1234);
+      for (int i = 0; i < requests.length; i++) {
+        String[] route = TransportDispatcherTest.TRANSPORT_ROUTES[random.nextInt(
+          TransportDispatcherTest.TRANSPORT_ROUTES.length)];
+        String path = "/app" + random.nextInt(apps) + "/" + random.nextInt(1000) + "/" + Long.toHexString(
+          random.nextLong()) + "/" + route[0];
+        requests[i] = TransportDispatcherTest.request(HttpMethod.valueOf(route[1]), path, params);
+      }
+      // Warm up both paths before timing them
+      for (int i = 0; i < 3; i++) {
+        dispatcher(dispatcher, requests);
+        routeMatcher(rm, requests);
+      }
+      System.out.printf("%d apps: dispatcher %s, RouteMatcher %s%n", apps, dispatcher(dispatcher, requests),
+        routeMatcher(rm, requests));
+    }
+  }
+
+  // The routes installApp used to add, the ones before the transports come first
+  private static void addRegexRoutes(RouteMatcher rm, String prefix, Handler<HttpServerRequest> handler) {
+    rm.matchMethodWithRegEx(HttpMethod.GET, prefix + "\\/?", handler);
+    rm.matchMethodWithRegEx(HttpMethod.GET, prefix + "\\/iframe\\.html", handler);
+    rm.matchMethodWithRegEx(HttpMethod.GET, prefix + "\\/iframe-[^\\/]*\\.html", handler);
+    rm.matchMethodWithRegEx(HttpMethod.POST, prefix + "\\/chunking_test", handler);
+    rm.matchMethodWithRegEx(HttpMethod.OPTIONS, prefix + "\\/chunking_test", handler);
+    rm.matchMethodWithRegEx(HttpMethod.GET, prefix + "\\/info", handler);
+    rm.matchMethodWithRegEx(HttpMethod.OPTIONS, prefix + "\\/info", handler);
+    for (String[] route : TransportDispatcherTest.TRANSPORT_ROUTES) {
+      rm.matchMethodWithRegEx(HttpMethod.valueOf(route[1]), prefix + SESSION_PATH_RE + route[0], handler);
+    }
+    rm.allWithRegEx(prefix + SESSION_PATH_RE + "websocket", handler);
+    rm.matchMethodWithRegEx(HttpMethod.GET, prefix + "\\/.+", handler);
+  }
+
+  private static String dispatcher(TransportDispatcher dispatcher, HttpServerRequest[] requests) {
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < REQUESTS; i++) {
+      if (!dispatcher.dispatch(requests[i & (requests.length - 1)])) {
+        throw new IllegalStateException("Not dispatched");
+      }
+    }
+    return result(System.nanoTime() - start, allocatedBytes() - allocated);
+  }
+
+  private static String routeMatcher(RouteMatcher rm, HttpServerRequest[] requests) {
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < REQUESTS; i++) {
+      rm.accept(requests[i & (requests.length - 1)]);
+    }
+    return result(System.nanoTime() - start, allocatedBytes() - allocated);
+  }
+
+  private static String result(long time, long allocated) {
+    return String.format("%5d ns/request %5d B/request", time / REQUESTS, allocated / REQUESTS);
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(
+      Thread.currentThread().getId());
+  }
+}
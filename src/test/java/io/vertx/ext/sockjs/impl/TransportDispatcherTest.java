@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Apache License v2.0 is available at
+ * http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The transport dispatcher must handle exactly the requests the regex routes of the transports used to match.
+ */
+public class TransportDispatcherTest extends VertxTestBase {
+
+  static final String[][] TRANSPORT_ROUTES = {
+    {"xhr", "POST"}, {"xhr", "OPTIONS"}, {"xhr_streaming", "POST"}, {"xhr_streaming", "OPTIONS"},
+    {"xhr_send", "POST"}, {"xhr_send", "OPTIONS"}, {"eventsource", "GET"}, {"htmlfile", "GET"}, {"jsonp", "GET"},
+    {"jsonp_send", "POST"}, {"websocket", "GET"}
+  };
+  private static final String SESSION_PATH_RE = "\\/[^\\/\\.]+\\/([^\\/\\.]+)\\/";
+
+  private final Map<String, String> params = new HashMap<>();
+  private String handled;
+
+  @Test
+  public void testTransportPaths() {
+    TransportDispatcher dispatcher = dispatcher("/app");
+    for (String[] route : TRANSPORT_ROUTES) {
+      assertDispatched(dispatcher, HttpMethod.valueOf(route[1]), "/app/000/session1/" + route[0],
+        route[1] + " " + route[0]);
+      assertEquals("session1", params.get("param0"));
+    }
+    // Websockets handle the other methods themselves
+    assertDispatched(dispatcher, HttpMethod.POST, "/app/000/session1/websocket", "any websocket");
+  }
+
+  @Test
+  public void testPrefixes() {
+    TransportDispatcher dispatcher = dispatcher("/app");
+    route(dispatcher, "/nested/app");
+    assertDispatched(dispatcher, HttpMethod.POST, "/nested/app/000/session1/xhr", "POST xhr");
+    assertNotDispatched(dispatcher, HttpMethod.POST, "/nested/000/session1/xhr");
+    assertNotDispatched(dispatcher, HttpMethod.POST, "/other/000/session1/xhr");
+    assertNotDispatched(dispatcher, HttpMethod.POST, "/app/extra/000/session1/xhr");
+    assertNotDispatched(dispatcher, HttpMethod.POST, "/000/session1/xhr");
+  }
+
+  @Test
+  public void testMalformedPaths() {
+    TransportDispatcher dispatcher = dispatcher("/app");
+    for (String path : new String[]{
+      "", "/", "xhr", "/xhr", "/app/xhr", "/app/session1/xhr", "app/000/session1/xhr", "/app//session1/xhr",
+      "/app/000//xhr", "/app///xhr", "/app/0.0/session1/xhr", "/app/000/session.1/xhr", "/app/000/./xhr",
+      "/app/000/session1/", "/app/000/session1/unknown", "/app/000/session1/XHR"}) {
+      assertNotDispatched(dispatcher, HttpMethod.POST, path);
+    }
+  }
+
+  @Test
+  public void testTrailingSlash() {
+    TransportDispatcher dispatcher = dispatcher("/app");
+    assertNotDispatched(dispatcher, HttpMethod.POST, "/app/000/session1/xhr/");
+    assertNotDispatched(dispatcher, HttpMethod.GET, "/app/000/session1/websocket/");
+    assertNotDispatched(dispatcher, HttpMethod.POST, "/app/000/session1/xhr//");
+  }
+
+  @Test
+  public void testUnknownMethod() {
+    TransportDispatcher dispatcher = dispatcher("/app");
+    // Left to the RouteMatcher, which answers with a 404
+    assertNotDispatched(dispatcher, HttpMethod.GET, "/app/000/session1/xhr");
+    assertNotDispatched(dispatcher, HttpMethod.PUT, "/app/000/session1/xhr_send");
+    assertNotDispatched(dispatcher, HttpMethod.POST, "/app/000/session1/eventsource");
+    assertNotDispatched(dispatcher, HttpMethod.DELETE, "/app/000/session1/jsonp");
+  }
+
+  @Test
+  public void testFirstRouteWins() {
+    TransportDispatcher dispatcher = new TransportDispatcher();
+    dispatcher.route("/app", "xhr", HttpMethod.POST, req -> handled = "first");
+    dispatcher.route("/app", "xhr", HttpMethod.POST, req -> handled = "second");
+    dispatcher.routeAll("/app", "xhr", req -> handled = "first any");
+    dispatcher.routeAll("/app", "xhr", req -> handled = "second any");
+    assertDispatched(dispatcher, HttpMethod.POST, "/app/000/session1/xhr", "first");
+    assertDispatched(dispatcher, HttpMethod.GET, "/app/000/session1/xhr", "first any");
+  }
+
+  @Test
+  public void testSameAsRegexRoutes() {
+    TransportDispatcher dispatcher = dispatcher("/app");
+    RouteMatcher rm = routeMatcher("/app");
+    String[] paths = {
+      "/app/000/session1/xhr", "/app/a/b/xhr_send", "/app/000/session1/websocket", "/app/000/session1/xhr/",
+      "/app/0.0/session1/xhr", "/app/000/session.1/jsonp", "/app//session1/xhr", "/app/000//xhr",
+      "/app/session1/xhr", "/app/x/000/session1/xhr", "/other/000/session1/eventsource", "/app/000/s/htmlfile",
+      "/app/000/s/unknown", "/app/000/s/jsonp_send", "/app/000/s/xhr_streaming", "/app/000/s/"
+    };
+    for (String path : paths) {
+      for (HttpMethod method : new HttpMethod[]{HttpMethod.GET, HttpMethod.POST, HttpMethod.OPTIONS}) {
+        params.clear();
+        handled = null;
+        boolean dispatched = dispatcher.dispatch(request(method, path, params));
+        String dispatchedTo = handled;
+        String dispatchedSession = params.get("param0");
+        params.clear();
+        handled = null;
+        rm.accept(request(method, path, params));
+        String message = method + " " + path;
+        if (dispatched) {
+          assertEquals(message, handled, dispatchedTo);
+          assertEquals(message, params.get("param0"), dispatchedSession);
+        } else {
+          assertEquals(message, "not found", handled);
+        }
+      }
+    }
+  }
+
+  private TransportDispatcher dispatcher(String prefix) {
+    TransportDispatcher dispatcher = new TransportDispatcher();
+    route(dispatcher, prefix);
+    return dispatcher;
+  }
+
+  private void route(TransportDispatcher dispatcher, String prefix) {
+    for (String[] route : TRANSPORT_ROUTES) {
+      String name = route[1] + " " + route[0];
+      dispatcher.route(prefix, route[0], HttpMethod.valueOf(route[1]), req -> handled = name);
+    }
+    dispatcher.routeAll(prefix, "websocket", req -> handled = "any websocket");
+  }
+
+  // The routes the transports had before the dispatcher
+  private RouteMatcher routeMatcher(String prefix) {
+    RouteMatcher rm = new RouteMatcherImpl();
+    for (String[] route : TRANSPORT_ROUTES) {
+      String name = route[1] + " " + route[0];
+      rm.matchMethodWithRegEx(HttpMethod.valueOf(route[1]), prefix + SESSION_PATH_RE + route[0],
+        req -> handled = name);
+    }
+    rm.allWithRegEx(prefix + SESSION_PATH_RE + "websocket", req -> handled = "any websocket");
+    rm.noMatch(req -> handled = "not found");
+    return rm;
+  }
+
+  private void assertDispatched(TransportDispatcher dispatcher, HttpMethod method, String path, String name) {
+    params.clear();
+    handled = null;
+    assertTrue(method + " " + path, dispatcher.dispatch(request(method, path, params)));
+    assertEquals(name, handled);
+  }
+
+  private void assertNotDispatched(TransportDispatcher dispatcher, HttpMethod method, String path) {
+    params.clear();
+    handled = null;
+    assertFalse(method + " " + path, dispatcher.dispatch(request(method, path, params)));
+    assertNull(handled);
+    assertTrue(params.isEmpty());
+  }
+
+  /**
+   * @return a request with only a method, a path and parameters
+   */
+  static HttpServerRequest request(HttpMethod method, String path, Map<String, String> params) {
+    MultiMap multiMap = (MultiMap) Proxy.newProxyInstance(MultiMap.class.getClassLoader(),
+      new Class[]{MultiMap.class}, (proxy, m, args) -> {
+        switch (m.getName()) {
+          case "get":
+            return params.get(args[0]);
+          case "set":
+          case "add":
+            params.put((String) args[0], (String) args[1]);
+            return proxy;
+          case "addAll":
+            if (args[0] instanceof Map) {
+              @SuppressWarnings("unchecked") Map<String, String> map = (Map<String, String>) args[0];
+              params.putAll(map);
+              return proxy;
+            }
+          default:
+            throw new UnsupportedOperationException(m.getName());
+        }
+      });
+    return (HttpServerRequest) Proxy.newProxyInstance(HttpServerRequest.class.getClassLoader(),
+      new Class[]{HttpServerRequest.class}, (proxy, m, args) -> {
+        switch (m.getName()) {
+          case "method":
+            return method;
+          case "path":
+          case "uri":
+            return path;
+          case "params":
+            return multiMap;
+          default:
+            throw new UnsupportedOperationException(m.getName());
+        }
+      });
+  }
+}
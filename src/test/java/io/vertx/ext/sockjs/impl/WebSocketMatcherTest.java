@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Apache License v2.0 is available at
+ * http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * The session and exact path bindings must match the upgrades the regex bindings of the transports used to match.
+ */
+public class WebSocketMatcherTest extends VertxTestBase {
+
+  private static final String SESSION_PATH_RE = "\\/[^\\/\\.]+\\/([^\\/\\.]+)\\/";
+
+  private String handled;
+  private String sessionID;
+  private boolean rejected;
+
+  @Test
+  public void testSessionPath() {
+    WebSocketMatcher matcher = new WebSocketMatcher();
+    matcher.addSessionPath("/app", match -> {
+      handled = "session";
+      sessionID = match.sessionID;
+    });
+    assertMatched(matcher, "/app/000/session1/websocket", "session");
+    assertEquals("session1", sessionID);
+    assertMatched(matcher, "/app/a/b/websocket", "session");
+    assertEquals("b", sessionID);
+  }
+
+  @Test
+  public void testSessionPathNotMatched() {
+    WebSocketMatcher matcher = new WebSocketMatcher();
+    matcher.addSessionPath("/app", match -> handled = "session");
+    for (String path : new String[]{
+      "", "/", "/websocket", "/app", "/app/websocket", "/app/000/websocket", "/app//websocket", "/app///websocket",
+      "/app//session1/websocket", "/app/000//websocket", "/app/0.0/session1/websocket",
+      "/app/000/session.1/websocket", "/app/000/session1/extra/websocket", "/app/x/000/session1/websocket",
+      "/app/000/session1/websocket/", "/app/000/session1/websockets", "/app/000/session1/Websocket",
+      "/app/000/session1websocket", "/app/000/session1/xhr", "/app0/000/session1/websocket",
+      "/ap/000/session1/websocket", "/other/000/session1/websocket", "app/000/session1/websocket",
+      "/000/session1/websocket"}) {
+      assertNotMatched(matcher, path);
+    }
+  }
+
+  @Test
+  public void testExactPath() {
+    WebSocketMatcher matcher = new WebSocketMatcher();
+    matcher.addPath("/app/websocket", match -> handled = "exact");
+    assertMatched(matcher, "/app/websocket", "exact");
+    for (String path : new String[]{"/app/websocket/", "/app/websocketx", "/app/Websocket", "/app", "/websocket",
+      "/app/000/session1/websocket", "/x/app/websocket", ""}) {
+      assertNotMatched(matcher, path);
+    }
+  }
+
+  @Test
+  public void testFirstBindingWins() {
+    WebSocketMatcher matcher = new WebSocketMatcher();
+    // A raw websocket path that is also a session path of another app
+    matcher.addPath("/app/000/session1/websocket", match -> handled = "exact");
+    matcher.addSessionPath("/app", match -> handled = "session");
+    matcher.addRegEx("\\/app\\/.*", match -> handled = "regex");
+    assertMatched(matcher, "/app/000/session1/websocket", "exact");
+    assertMatched(matcher, "/app/000/session2/websocket", "session");
+    assertMatched(matcher, "/app/other", "regex");
+  }
+
+  @Test
+  public void testNoMatchHandler() {
+    WebSocketMatcher matcher = new WebSocketMatcher();
+    matcher.addSessionPath("/app", match -> handled = "session");
+    matcher.noMatch(match -> {
+      assertNull(match.params);
+      assertNull(match.sessionID);
+      handled = "no match";
+    });
+    assertMatched(matcher, "/app/000/session1/xhr", "no match");
+  }
+
+  @Test
+  public void testSameAsRegexBindings() {
+    WebSocketMatcher matcher = new WebSocketMatcher();
+    matcher.addSessionPath("/app", match -> {
+      handled = "session";
+      sessionID = match.sessionID;
+    });
+    matcher.addPath("/app/websocket", match -> handled = "exact");
+    // The bindings the transports had before
+    WebSocketMatcher regexMatcher = new WebSocketMatcher();
+    regexMatcher.addRegEx("/app" + SESSION_PATH_RE + "websocket", match -> {
+      handled = "session";
+      sessionID = match.params.get("param0");
+    });
+    regexMatcher.addRegEx("/app\\/websocket", match -> handled = "exact");
+    String[] paths = {
+      "/app/000/session1/websocket", "/app/a/b/websocket", "/app/websocket", "/app/websocket/",
+      "/app/000/websocket", "/app//session1/websocket", "/app/000//websocket", "/app/0.0/session1/websocket",
+      "/app/000/session.1/websocket", "/app/000/session1/extra/websocket", "/app/000/session1/websocket/",
+      "/app0/000/session1/websocket", "/app/000/session1/xhr", "/app/x/000/session1/websocket"
+    };
+    for (String path : paths) {
+      handle(matcher, path);
+      String matchedBy = handled;
+      String matchedSession = sessionID;
+      boolean matchedRejected = rejected;
+      handle(regexMatcher, path);
+      assertEquals(path, handled, matchedBy);
+      assertEquals(path, sessionID, matchedSession);
+      assertEquals(path, rejected, matchedRejected);
+    }
+  }
+
+  private void assertMatched(WebSocketMatcher matcher, String path, String name) {
+    handle(matcher, path);
+    assertEquals(path, name, handled);
+    assertFalse(rejected);
+  }
+
+  private void assertNotMatched(WebSocketMatcher matcher, String path) {
+    handle(matcher, path);
+    assertNull(handled);
+    assertTrue(path, rejected);
+  }
+
+  private void handle(WebSocketMatcher matcher, String path) {
+    handled = null;
+    sessionID = null;
+    rejected = false;
+    matcher.handle((ServerWebSocket) Proxy.newProxyInstance(ServerWebSocket.class.getClassLoader(),
+      new Class[]{ServerWebSocket.class}, (proxy, m, args) -> {
+        switch (m.getName()) {
+          case "path":
+            return path;
+          case "reject":
+            rejected = true;
+            return null;
+          default:
+            throw new UnsupportedOperationException(m.getName());
+        }
+      }));
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Apache License v2.0 is available at
+ * http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+/**
+ * The queue starts with 8 slots.
+ */
+public class WriteQueueTest extends VertxTestBase {
+
+  private final WriteQueue queue = new WriteQueue();
+
+  @Test
+  public void testWraparound() {
+    for (int i = 0; i < 8; i++) {
+      queue.add(message(i));
+    }
+    for (int i = 0; i < 5; i++) {
+      assertEquals("msg" + i, queue.poll().toString());
+    }
+    // The next 5 go to the start of the array, after the 3 left at its end
+    for (int i = 8; i < 13; i++) {
+      queue.add(message(i));
+    }
+    assertEquals(8, queue.size());
+    assertEquals(5 * 4 + 3 * 5, queue.bytes());
+    for (int i = 0; i < 8; i++) {
+      assertEquals("msg" + (i + 5), queue.get(i).toString());
+    }
+    for (int i = 5; i < 13; i++) {
+      assertEquals("msg" + i, queue.poll().toString());
+    }
+    assertTrue(queue.isEmpty());
+    assertEquals(0, queue.bytes());
+    assertNull(queue.poll());
+  }
+
+  @Test
+  public void testGrowWhileWrapped() {
+    for (int i = 0; i < 8; i++) {
+      queue.add(message(i));
+    }
+    for (int i = 0; i < 6; i++) {
+      queue.poll();
+    }
+    // Wrapped, with the odd messages already encoded, then grown past the 8 slots
+    for (int i = 8; i < 20; i++) {
+      if (i % 2 == 0) {
+        queue.add(message(i));
+      } else {
+        queue.addEncoded(message(i));
+      }
+    }
+    assertEquals(14, queue.size());
+    for (int i = 0; i < 14; i++) {
+      int msg = i + 6;
+      assertEquals("msg" + msg, queue.get(i).toString());
+      assertEquals(msg >= 8 && msg % 2 == 1, queue.isEncoded(i));
+    }
+    assertEquals(4 * 4 + 10 * 5, queue.bytes());
+  }
+
+  @Test
+  public void testEncodedFlagFollowsSlot() {
+    queue.addEncoded(message(0));
+    queue.poll();
+    // Same slot, not encoded this time
+    for (int i = 1; i < 9; i++) {
+      queue.add(message(i));
+    }
+    for (int i = 0; i < queue.size(); i++) {
+      assertFalse(queue.isEncoded(i));
+    }
+  }
+
+  @Test
+  public void testClear() {
+    for (int i = 0; i < 5; i++) {
+      queue.add(message(i));
+    }
+    queue.poll();
+    queue.clear();
+    assertTrue(queue.isEmpty());
+    assertEquals(0, queue.bytes());
+    queue.add(message(7));
+    assertEquals("msg7", queue.get(0).toString());
+    assertEquals(4, queue.bytes());
+  }
+
+  @Test
+  public void testGetOutOfBounds() {
+    queue.add(message(0));
+    try {
+      queue.get(1);
+      fail("Should throw");
+    } catch (IndexOutOfBoundsException e) {
+      // OK
+    }
+  }
+
+  private static Buffer message(int i) {
+    return Buffer.buffer("msg" + i);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Apache License v2.0 is available at
+ * http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.test;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.sockjs.SockJSServer;
+import io.vertx.ext.sockjs.SockJSServerOptions;
+import io.vertx.test.core.HttpTestBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the polling transports: concurrent clients on keep-alive connections send a message to an echo app
+ * and poll for its echo, over xhr and over jsonp. It reports how many connections the server accepted per 100
+ * polls, which is 100 when every poll closes its connection, and the latency of the polls.<p>
+ * The server counts connections by remote address, so its request handler is wrapped and it logs that the
+ * handler has been overwritten, which can be ignored here.
+ * It is not run with the tests, run its main method against the commits to compare.
+ */
+public class PollingBenchmark {
+
+  private static final int CLIENTS = 100;
+  private static final int POLLS = 200;
+
+  public static void main(String[] args) throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      HttpServer server = vertx.createHttpServer(new HttpServerOptions().setPort(HttpTestBase.DEFAULT_HTTP_PORT));
+      SockJSServer sockJSServer = SockJSServer.sockJSServer(vertx, server);
+      sockJSServer.installApp(new SockJSServerOptions().setPrefix("/echo"), sock -> sock.handler(sock::write));
+      Set<String> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+      Handler<HttpServerRequest> sockJSHandler = server.requestHandler();
+      server.requestHandler(req -> {
+        connections.add(req.remoteAddress().hostAddress() + ":" + req.remoteAddress().hostPort());
+        sockJSHandler.handle(req);
+      });
+      CountDownLatch listening = new CountDownLatch(1);
+      server.listen(ar -> listening.countDown());
+      listening.await();
+      for (String transport : new String[]{"xhr", "jsonp"}) {
+        // Warm up before measuring
+        run(vertx, transport, connections);
+        System.out.println(run(vertx, transport, connections));
+      }
+      CountDownLatch closed = new CountDownLatch(1);
+      server.close(ar -> closed.countDown());
+      closed.await();
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static String run(Vertx vertx, String transport, Set<String> connections) throws Exception {
+    connections.clear();
+    HttpClient client = vertx.createHttpClient(new HttpClientOptions().setKeepAlive(true)
+      .setMaxPoolSize(CLIENTS));
+    List<Long> latencies = Collections.synchronizedList(new ArrayList<>(CLIENTS * POLLS));
+    CountDownLatch done = new CountDownLatch(CLIENTS);
+    long start = System.nanoTime();
+    for (int i = 0; i < CLIENTS; i++) {
+      new PollingClient(client, transport, "/echo/000/" + transport + i + "-" + start, latencies, done).open();
+    }
+    if (!done.await(5, TimeUnit.MINUTES)) {
+      throw new IllegalStateException("The clients didn't finish");
+    }
+    long time = System.nanoTime() - start;
+    client.close();
+    Collections.sort(latencies);
+    return String.format("%-5s: %d polls in %d ms, %d connections per 100 polls, latency p50 %d us, p99 %d us",
+      transport, latencies.size(), time / 1_000_000, connections.size() * 100 / latencies.size(),
+      percentile(latencies, 50) / 1000, percentile(latencies, 99) / 1000);
+  }
+
+  private static long percentile(List<Long> sorted, int percentile) {
+    return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+  }
+
+  private static class PollingClient {
+
+    final HttpClient client;
+    final String transport;
+    final String sessionPath;
+    final List<Long> latencies;
+    final CountDownLatch done;
+    int polls;
+
+    PollingClient(HttpClient client, String transport, String sessionPath, List<Long> latencies,
+                  CountDownLatch done) {
+      this.client = client;
+      this.transport = transport;
+      this.sessionPath = sessionPath;
+      this.latencies = latencies;
+      this.done = done;
+    }
+
+    // The first poll creates the session and gets the open frame
+    void open() {
+      poll(body -> {
+        if (!body.contains("o")) {
+          throw new IllegalStateException("Unexpected open frame " + body);
+        }
+        send();
+      });
+    }
+
+    void send() {
+      HttpClientRequest req;
+      if (transport.equals("xhr")) {
+        req = request(HttpMethod.POST, "/xhr_send", body -> poll(this::echoed));
+      } else {
+        req = request(HttpMethod.POST, "/jsonp_send", body -> poll(this::echoed)).putHeader("content-type",
+          "text/plain");
+      }
+      req.end("[\"ping\"]");
+    }
+
+    void echoed(String body) {
+      if (!body.contains("ping")) {
+        throw new IllegalStateException("Unexpected message frame " + body);
+      }
+      if (++polls < POLLS) {
+        send();
+      } else {
+        done.countDown();
+      }
+    }
+
+    void poll(Handler<String> handler) {
+      long start = System.nanoTime();
+      Handler<String> timed = body -> {
+        latencies.add(System.nanoTime() - start);
+        handler.handle(body);
+      };
+      if (transport.equals("xhr")) {
+        request(HttpMethod.POST, "/xhr", timed).end();
+      } else {
+        request(HttpMethod.GET, "/jsonp?c=callback", timed).end();
+      }
+    }
+
+    HttpClientRequest request(HttpMethod method, String path, Handler<String> handler) {
+      HttpClientRequest req = client.request(method, HttpTestBase.DEFAULT_HTTP_PORT, HttpTestBase.DEFAULT_HTTP_HOST,
+        sessionPath + path, resp -> resp.bodyHandler(body -> handler.handle(body.toString())));
+      req.exceptionHandler(t -> {
+        t.printStackTrace();
+        done.countDown();
+      });
+      return req;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Apache License v2.0 is available at
+ * http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.sockjs.test;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.http.WebSocketFrame;
+import io.vertx.ext.sockjs.SockJSServer;
+import io.vertx.ext.sockjs.SockJSServerOptions;
+import io.vertx.ext.sockjs.SockJSSocket;
+import io.vertx.test.core.HttpTestBase;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The raw websocket transport in binary mode.
+ */
+public class RawWebSocketTest extends VertxTestBase {
+
+  private static final int MAX_MESSAGE_SIZE = 16;
+
+  private HttpServer server;
+  private SockJSServer sockJSServer;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    server = vertx.createHttpServer(new HttpServerOptions().setPort(HttpTestBase.DEFAULT_HTTP_PORT));
+    sockJSServer = SockJSServer.sockJSServer(vertx, server);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    server.close(ar -> {
+      assertTrue(ar.succeeded());
+      latch.countDown();
+    });
+    awaitLatch(latch);
+    super.tearDown();
+  }
+
+  @Test
+  public void testBinaryWrite() {
+    connect(sock -> sock.write(Buffer.buffer("hello")), ws -> ws.frameHandler(frame -> {
+      assertTrue(frame.isBinary());
+      assertEquals("hello", frame.binaryData().toString());
+      testComplete();
+    }));
+  }
+
+  @Test
+  public void testSharedBufferWrite() {
+    Buffer message = Buffer.buffer("hello");
+    AtomicInteger received = new AtomicInteger();
+    // Written twice, the first write must leave the buffer readable
+    connect(sock -> sock.write(message).write(message), ws -> ws.frameHandler(frame -> {
+      assertEquals("hello", frame.binaryData().toString());
+      if (received.incrementAndGet() == 2) {
+        assertEquals("hello", message.toString());
+        testComplete();
+      }
+    }));
+  }
+
+  @Test
+  public void testBroadcast() {
+    AtomicInteger received = new AtomicInteger();
+    connect(sock -> sockJSServer.broadcast(Arrays.asList(sock, sock), Buffer.buffer("hello")),
+      ws -> ws.frameHandler(frame -> {
+        assertEquals("hello", frame.binaryData().toString());
+        if (received.incrementAndGet() == 2) {
+          testComplete();
+        }
+      }));
+  }
+
+  @Test
+  public void testBinaryRead() {
+    connect(sock -> sock.handler(data -> {
+      assertEquals("hello", data.toString());
+      testComplete();
+    }), ws -> ws.writeFrame(WebSocketFrame.binaryFrame(Buffer.buffer("hello"), true)));
+  }
+
+  @Test
+  public void testReassembly() {
+    connect(sock -> sock.handler(data -> {
+      assertEquals("hello world", data.toString());
+      testComplete();
+    }), ws -> {
+      ws.writeFrame(WebSocketFrame.binaryFrame(Buffer.buffer("hel"), false));
+      ws.writeFrame(WebSocketFrame.continuationFrame(Buffer.buffer("lo"), false));
+      ws.writeFrame(WebSocketFrame.continuationFrame(Buffer.buffer(" world"), true));
+    });
+  }
+
+  @Test
+  public void testMessageTooLarge() {
+    connect(sock -> sock.handler(data -> fail("The message should have been refused")), ws -> {
+      ws.closeHandler(v -> testComplete());
+      ws.writeFrame(WebSocketFrame.binaryFrame(Buffer.buffer(new byte[MAX_MESSAGE_SIZE]), false));
+      ws.writeFrame(WebSocketFrame.continuationFrame(Buffer.buffer(new byte[1]), true));
+    });
+  }
+
+  private void connect(Handler<SockJSSocket> sockHandler, Handler<WebSocket> wsHandler) {
+    sockJSServer.installApp(new SockJSServerOptions().setPrefix("/raw").setRawWebSocketBinary(true)
+      .setRawWebSocketMaxMessageSize(MAX_MESSAGE_SIZE), sockHandler);
+    server.listen(ar -> {
+      assertTrue(ar.succeeded());
+      vertx.createHttpClient(new HttpClientOptions()).connectWebsocket(HttpTestBase.DEFAULT_HTTP_PORT,
+        HttpTestBase.DEFAULT_HTTP_HOST, "/raw/websocket", wsHandler);
+    });
+    await();
+  }
+}